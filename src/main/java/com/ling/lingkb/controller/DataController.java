@@ -2,6 +2,7 @@ package com.ling.lingkb.controller;
 
 import com.ling.lingkb.entity.LingDocument;
 import com.ling.lingkb.entity.Reply;
+import com.ling.lingkb.entity.TuningReport;
 import com.ling.lingkb.llm.data.DataFeeder;
 import java.io.IOException;
 import java.net.URI;
@@ -94,6 +95,36 @@ public class DataController {
         return Reply.success(document);
     }
 
+    @DeleteMapping("/docs/{docId}")
+    public Reply removeDoc(@PathVariable String docId) {
+        if (!dataFeeder.removeDocument(docId)) {
+            return Reply.failure("The doc does not exist.");
+        }
+        return Reply.success();
+    }
+
+    @GetMapping("/workspaces")
+    public Reply workspaces() {
+        return Reply.success(dataFeeder.getWorkspaceStats());
+    }
+
+    /**
+     * Node counts, sizes and graph shape of the text shards and the link index of the workspace
+     */
+    @GetMapping("/workspaces/index")
+    public Reply index() {
+        return Reply.success(dataFeeder.getIndexStats());
+    }
+
+    @PostMapping("/workspaces/tune")
+    public Reply tune() {
+        TuningReport report = dataFeeder.tune();
+        if (report == null) {
+            return Reply.failure("Too few vectors in the workspace to tune its index.");
+        }
+        return Reply.success(report);
+    }
+
     @GetMapping("/vectors/{docId}")
     public Reply vectors(@PathVariable String docId) {
         return Reply.success(dataFeeder.getVectors(docId));
@@ -3,16 +3,23 @@ package com.ling.lingkb.controller;
 import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
 import com.ling.lingkb.entity.ChatTag;
-import com.ling.lingkb.entity.LingDocumentLink;
+import com.ling.lingkb.entity.Reply;
+import com.ling.lingkb.entity.Retrieval;
+import com.ling.lingkb.entity.SearchFilter;
+import com.ling.lingkb.entity.SearchHit;
+import com.ling.lingkb.global.WorkspaceContext;
 import com.ling.lingkb.llm.client.EmbeddingClient;
 import com.ling.lingkb.llm.client.QwenClient;
 import com.ling.lingkb.llm.client.QwenPromptHelper;
 import com.ling.lingkb.llm.client.VectorStoreClient;
 import java.util.List;
+import java.util.stream.Collectors;
 import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -31,14 +38,16 @@ public class DialogController {
     private QwenClient qwenClient;
     private EmbeddingClient embeddingClient;
     private VectorStoreClient vectorStoreClient;
+    private WorkspaceContext workspaceContext;
 
 
     @Autowired
     public DialogController(QwenClient qwenClient, EmbeddingClient embeddingClient,
-                            VectorStoreClient vectorStoreClient) {
+                            VectorStoreClient vectorStoreClient, WorkspaceContext workspaceContext) {
         this.qwenClient = qwenClient;
         this.embeddingClient = embeddingClient;
         this.vectorStoreClient = vectorStoreClient;
+        this.workspaceContext = workspaceContext;
     }
 
     @PostMapping(value = "/dialog", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
@@ -54,11 +63,68 @@ public class DialogController {
             QwenPromptHelper.buildToZhPrompt(json, question);
             qwenClient.fetchStreamData(json, response, null);
         } else {
-            float[] query = embeddingClient.getEmbedding(question);
-            List<String> vectorResults = vectorStoreClient.searchTopK(query);
-            LingDocumentLink link = vectorStoreClient.searchLink(query);
+            Retrieval retrieval = retrieve(question, json.getObject("filter", SearchFilter.class));
+            List<String> vectorResults =
+                    retrieval.getHits().stream().map(SearchHit::getText).collect(Collectors.toList());
             QwenPromptHelper.buildPrompt(json, question, vectorResults);
-            qwenClient.fetchStreamData(json, response, link);
+            qwenClient.fetchStreamData(json, response, retrieval.getLink());
         }
     }
+
+    /**
+     * The sentences and the link retrieved for a question without asking the model, with {@code explain} set also
+     * the work of the index searches and their timing
+     */
+    @PostMapping("/search")
+    public Reply search(@RequestBody JSONObject json) {
+        String question = json.getString("question");
+        if (StringUtils.isBlank(question)) {
+            return Reply.failure("The question is empty");
+        }
+        SearchFilter filter = json.getObject("filter", SearchFilter.class);
+        if (json.getBooleanValue("explain")) {
+            float[] query = embeddingClient.getQuestionEmbedding(question);
+            return Reply.success(vectorStoreClient.explain(workspaceContext.get(), question, query, filter));
+        }
+        return Reply.success(retrieve(question, filter));
+    }
+
+    /**
+     * The sentences of many questions at once, for evaluation jobs. The questions are embedded in one request and
+     * searched in parallel, without the lexical shortcut, the retrieval cache and the link.
+     */
+    @PostMapping("/search/batch")
+    public Reply searchBatch(@RequestBody JSONObject json) {
+        JSONArray array = json.getJSONArray("questions");
+        List<String> questions = array == null ? List.of() : array.toJavaList(String.class);
+        if (questions.isEmpty() || questions.stream().anyMatch(StringUtils::isBlank)) {
+            return Reply.failure("The questions are empty");
+        }
+        List<float[]> queries = embeddingClient.getEmbeddings(questions);
+        if (queries.size() != questions.size() || queries.stream().anyMatch(query -> query.length == 0)) {
+            return Reply.failure("Failed to embed the questions");
+        }
+        return Reply.success(vectorStoreClient.searchBatch(workspaceContext.get(), queries, json.getIntValue("topK")));
+    }
+
+    /**
+     * Size and hit rate of the question embedding cache and the retrieval cache
+     */
+    @GetMapping("/cache")
+    public Reply cache() {
+        return Reply.success(List.of(embeddingClient.cacheStats(), vectorStoreClient.cacheStats()));
+    }
+
+    /**
+     * Keyword questions decided by the lexical index skip the embedding
+     */
+    private Retrieval retrieve(String question, SearchFilter filter) {
+        String workspace = workspaceContext.get();
+        Retrieval retrieval = vectorStoreClient.retrieveLexical(workspace, question, filter);
+        if (retrieval == null) {
+            float[] query = embeddingClient.getQuestionEmbedding(question);
+            retrieval = vectorStoreClient.retrieve(workspace, question, query, filter);
+        }
+        return retrieval;
+    }
 }
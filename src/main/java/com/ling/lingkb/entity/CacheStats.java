@@ -0,0 +1,35 @@
+package com.ling.lingkb.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Size and effectiveness of one query cache since startup
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/19
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheStats {
+    private String name;
+    private int size;
+    private int capacity;
+    private long ttlMillis;
+    private long hits;
+    private long misses;
+    private double hitRate;
+    /**
+     * Entries dropped because the cache was full
+     */
+    private long evictions;
+    /**
+     * Entries dropped because they outlived the time to live
+     */
+    private long expirations;
+}
@@ -0,0 +1,38 @@
+package com.ling.lingkb.entity;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The work of one vector search over all shards of an index
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/19
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IndexExplain {
+    private int topK;
+    /**
+     * Candidates asked for before the rerank with the full vectors
+     */
+    private int rerankK;
+    /**
+     * Nodes scored, nodes whose neighbours were visited and those of them on the base layer
+     */
+    private int visited;
+    private int expanded;
+    private int expandedBaseLayer;
+    /**
+     * Candidates rescored with the full vectors
+     */
+    private int reranked;
+    private long traversalMicros;
+    private List<ScoredNode> nodes;
+}
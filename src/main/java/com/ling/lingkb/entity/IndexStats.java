@@ -0,0 +1,60 @@
+package com.ling.lingkb.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Size and graph shape of one shard of the text or link index of a workspace
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/19
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IndexStats {
+    private String workspace;
+    /**
+     * text or link
+     */
+    private String index;
+    private int shard;
+    /**
+     * The engine of the heap part, null while the shard is not loaded
+     */
+    private String engine;
+    private boolean diskResident;
+    /**
+     * Live nodes, the tombstoned ones are counted apart until compaction drops them
+     */
+    private int nodes;
+    private int tombstones;
+    private int segments;
+    /**
+     * Nodes held on heap, those inserted since the last flush for a disk resident shard
+     */
+    private int heapNodes;
+    private long heapBytes;
+    /**
+     * The files of the shard as last written, with its segments
+     */
+    private long diskBytes;
+    /**
+     * How long the structure took to build, or to load from its files
+     */
+    private long buildMillis;
+    private int maxDegree;
+    /**
+     * Live nodes by their number of base layer neighbours, empty for an engine without a graph
+     */
+    private int[] degreeHistogram;
+    private double meanDegree;
+    /**
+     * Live nodes no search can reach from the entry node of their graph
+     */
+    private int unreachable;
+}
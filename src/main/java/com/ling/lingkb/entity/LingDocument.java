@@ -22,6 +22,10 @@ public class LingDocument {
     private String author;
     private long size;
     private String sourceFileName;
+    /**
+     * upload, serverPath, confluence or web
+     */
+    private String sourceType;
     private long creationDate;
     private int pageCount;
 
@@ -31,5 +31,5 @@ public class LingDocumentLink {
      */
     private String contentAssistant;
     private String descText;
-    private String descVector;
+    private float[] descVector;
 }
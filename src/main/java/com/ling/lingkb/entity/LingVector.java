@@ -20,6 +20,6 @@ public class LingVector {
     private String docId;
     private Integer nodeId;
     private String txt;
-    private String vector;
+    private float[] vector;
     private boolean persisted;
 }
@@ -0,0 +1,26 @@
+package com.ling.lingkb.entity;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The sentences and the link retrieved for one question
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/19
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class Retrieval {
+    private List<SearchHit> hits;
+    /**
+     * The best link above the score threshold, null if there is none
+     */
+    private LingDocumentLink link;
+}
@@ -0,0 +1,29 @@
+package com.ling.lingkb.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A node found by a vector search with its raw similarity score, before thresholds and fusion
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/19
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScoredNode {
+    /**
+     * TEXT for a sentence, LINK for a link
+     */
+    private String type;
+    /**
+     * The node id of a sentence or the row id of a link
+     */
+    private int id;
+    private float score;
+}
@@ -0,0 +1,35 @@
+package com.ling.lingkb.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A retrieval together with the work and time spent on it
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/19
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchExplain {
+    private Retrieval retrieval;
+    private IndexExplain text;
+    /**
+     * Null when the links are kept in the text index and found by its search
+     */
+    private IndexExplain link;
+    /**
+     * Turning nodes into sentences from the chunk store and fetching the link
+     */
+    private long hydrationMicros;
+    /**
+     * The lexical search and its fusion with the vector hits, 0 without hybrid search
+     */
+    private long lexicalMicros;
+    private long totalMicros;
+}
@@ -0,0 +1,39 @@
+package com.ling.lingkb.entity;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Restricts a search to some documents, source types and a creation date range. Conditions left empty match
+ * everything, a node has to match all the others.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/19
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchFilter {
+    public static final String SOURCE_UPLOAD = "upload";
+
+    private List<String> docIds;
+    /**
+     * upload, serverPath, confluence or web
+     */
+    private List<String> sourceTypes;
+    /**
+     * Inclusive bounds of the creation date of the document in epoch milliseconds, compared by day
+     */
+    private Long createdFrom;
+    private Long createdTo;
+
+    public boolean isEmpty() {
+        return (docIds == null || docIds.isEmpty()) && (sourceTypes == null || sourceTypes.isEmpty()) &&
+                createdFrom == null && createdTo == null;
+    }
+}
@@ -0,0 +1,28 @@
+package com.ling.lingkb.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A sentence found by a vector search
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/12
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchHit {
+    private int nodeId;
+    private String docId;
+    /**
+     * Position of the sentence within its document
+     */
+    private int position;
+    private String text;
+    private float score;
+}
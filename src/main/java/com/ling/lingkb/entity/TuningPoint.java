@@ -0,0 +1,35 @@
+package com.ling.lingkb.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Recall and latency of one combination of graph parameters measured on a sample of a workspace
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/19
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TuningPoint {
+    private int maxDegree;
+    private int beamWidth;
+    private float alpha;
+    private int overquery;
+    /**
+     * Share of the exact top k found
+     */
+    private double recall;
+    private long p50Micros;
+    private long p99Micros;
+    private long buildMillis;
+    /**
+     * No other point has at least the same recall at a lower p99 latency
+     */
+    private boolean pareto;
+}
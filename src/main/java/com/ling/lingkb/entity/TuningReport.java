@@ -0,0 +1,34 @@
+package com.ling.lingkb.entity;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The parameter sweep of a workspace and the point chosen for it
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/19
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TuningReport {
+    private String workspace;
+    /**
+     * Vectors the graphs were built over and held-out queries searched in them
+     */
+    private int sampleSize;
+    private int queries;
+    private int topK;
+    private long latencySloMicros;
+    private List<TuningPoint> points;
+    /**
+     * The most accurate Pareto point within the latency objective, the fastest one if none meets it
+     */
+    private TuningPoint chosen;
+}
@@ -0,0 +1,33 @@
+package com.ling.lingkb.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Memory, size and load of the index of one workspace
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/15
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class WorkspaceStats {
+    private String workspace;
+    /**
+     * False once the index has been evicted, it is opened again by the next request
+     */
+    private boolean loaded;
+    private boolean diskResident;
+    private int vectors;
+    private int links;
+    private int shards;
+    private long bytesUsed;
+    private long queries;
+    private double queriesPerMinute;
+    private long lastAccessTime;
+}
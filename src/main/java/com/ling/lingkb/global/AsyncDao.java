@@ -6,6 +6,7 @@ import com.ling.lingkb.entity.LingDocumentLink;
 import com.ling.lingkb.entity.LingVector;
 import com.ling.lingkb.llm.client.EmbeddingClient;
 import com.ling.lingkb.llm.client.VectorStoreClient;
+import com.ling.lingkb.llm.vector.VectorCodec;
 import java.nio.charset.Charset;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
@@ -14,7 +15,6 @@ import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
-import javax.annotation.Resource;
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLContext;
 import org.apache.http.config.Registry;
@@ -87,17 +87,16 @@ public class AsyncDao {
 
     @Value("${qwen.embedding.chunk.size}")
     private int qwenEmbeddingChunkSize;
-    @Value("${system.workspace}")
-    private String workspace;
-    @Resource
-    private SoleMapper soleMapper;
     private EmbeddingClient embeddingClient;
     private VectorStoreClient vectorStoreClient;
+    private WorkspaceContext workspaceContext;
 
     @Autowired
-    public AsyncDao(EmbeddingClient embeddingClient, VectorStoreClient vectorStoreClient) {
+    public AsyncDao(EmbeddingClient embeddingClient, VectorStoreClient vectorStoreClient,
+                    WorkspaceContext workspaceContext) {
         this.embeddingClient = embeddingClient;
         this.vectorStoreClient = vectorStoreClient;
+        this.workspaceContext = workspaceContext;
     }
 
     @Async
@@ -105,28 +104,32 @@ public class AsyncDao {
         List<String> sentences = SentencesUtil.toSentenceList(lingDocument.getText(), false);
         List<List<String>> sentenceChunks = splitIntoChunks(sentences);
         for (List<String> sentenceChunk : sentenceChunks) {
-            feedInChunk(lingDocument.getDocId(), sentenceChunk);
+            feedInChunk(lingDocument.getWorkspace(), lingDocument.getDocId(), sentenceChunk);
         }
-        feedLinks(lingDocument.getLinks());
-        vectorStoreClient.setToInconsistent();
+        feedLinks(lingDocument.getWorkspace(), lingDocument.getLinks());
     }
 
     @Async
     public void feedInChunk(String docId, List<String> texts) {
+        feedInChunk(workspaceContext.get(), docId, texts);
+    }
+
+    private void feedInChunk(String workspace, String docId, List<String> texts) {
         List<float[]> vectors = embeddingClient.getEmbeddings(texts);
+        vectors.forEach(VectorCodec::normalize);
         List<LingVector> vectorList = new ArrayList<>();
         for (int i = 0; i < texts.size(); i++) {
             String text = texts.get(i);
             float[] vector = vectors.get(i);
             LingVector lingVector =
-                    LingVector.builder().workspace(workspace).docId(docId).txt(text).vector(floatsToString(vector))
+                    LingVector.builder().workspace(workspace).docId(docId).txt(text).vector(vector)
                             .persisted(false).build();
             vectorList.add(lingVector);
         }
-        soleMapper.batchSaveVectors(vectorList);
+        vectorStoreClient.addVectors(workspace, vectorList, vectors);
     }
 
-    private synchronized void feedLinks(List<LingDocumentLink> links) {
+    private synchronized void feedLinks(String workspace, List<LingDocumentLink> links) {
 
         if (links != null && !links.isEmpty()) {
             links = links.stream().filter(lingDocumentLink -> !lingDocumentLink.getDescText().trim().isEmpty())
@@ -134,20 +137,20 @@ public class AsyncDao {
             List<String> descList = links.stream().map(LingDocumentLink::getDescText).collect(Collectors.toList());
             if (!descList.isEmpty()) {
                 List<float[]> descVectorList = embeddingClient.getEmbeddings(descList);
+                descVectorList.forEach(VectorCodec::normalize);
                 for (int i = 0; i < links.size(); i++) {
                     LingDocumentLink link = links.get(i);
                     float[] vector = descVectorList.get(i);
-                    link.setDescVector(floatsToString(vector));
+                    link.setDescVector(vector);
                 }
-                soleMapper.batchSaveLinks(links);
+                vectorStoreClient.addLinks(workspace, links, descVectorList);
             }
         }
     }
 
     @Async
     public void removeNode(int nodeId) {
-        soleMapper.removeVectorByNodeId(nodeId);
-        vectorStoreClient.setToInconsistent();
+        vectorStoreClient.removeNode(workspaceContext.get(), nodeId);
     }
 
     private List<List<String>> splitIntoChunks(List<String> sentences) {
@@ -164,14 +167,4 @@ public class AsyncDao {
         }
         return chunks;
     }
-
-    private static String floatsToString(float[] array) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(array[0]);
-        final String delimiter = ",";
-        for (int i = 1; i < array.length; i++) {
-            sb.append(delimiter).append(array[i]);
-        }
-        return sb.toString();
-    }
 }
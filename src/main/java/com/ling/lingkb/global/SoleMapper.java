@@ -3,16 +3,18 @@ package com.ling.lingkb.global;
 import com.ling.lingkb.entity.LingDocument;
 import com.ling.lingkb.entity.LingDocumentLink;
 import com.ling.lingkb.entity.LingVector;
+import com.ling.lingkb.llm.vector.IndexManifest;
 import java.util.List;
-import java.util.stream.Collectors;
 import org.apache.ibatis.annotations.Delete;
 import org.apache.ibatis.annotations.Insert;
-import org.apache.ibatis.annotations.InsertProvider;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.ResultType;
 import org.apache.ibatis.annotations.Select;
-import org.apache.ibatis.annotations.SelectProvider;
 import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
 
 /**
  * @author shipotian
@@ -22,36 +24,79 @@ import org.apache.ibatis.annotations.Update;
 @Mapper
 public interface SoleMapper {
 
-    @Select("select * from ling_document_link where workspace=#{workspace} limit #{offset},1")
-    LingDocumentLink queryLink(@Param("workspace") String workspace, @Param("offset") int offset);
+    @Select("select id, doc_id, workspace, type, content, content_assistant, desc_text from ling_document_link " +
+            "where id = #{id}")
+    LingDocumentLink queryLinkById(int id);
 
-    @Select("select desc_vector from ling_document_link where workspace=#{workspace}")
-    List<LingDocumentLink> queryLinkVectors(String workspace);
+    @Select("select id from ling_document_link where workspace=#{workspace} and doc_id = #{docId}")
+    List<Integer> queryLinkIdsByDocId(@Param("workspace") String workspace, @Param("docId") String docId);
 
-    @Select("select * from ling_vector where workspace=#{workspace} and persisted = 1")
-    List<LingVector> queryAllVector(String workspace);
+    @Delete("delete from ling_document_link where workspace=#{workspace} and doc_id = #{docId}")
+    void removeLinksByDocId(@Param("workspace") String workspace, @Param("docId") String docId);
 
-    @Update("update ling_vector lv join (select id, -1 + (@rownum := @rownum + 1) as new_node_id " +
-            "from ling_vector,(select @rownum := 0) r where workspace = #{workspace} order by id) tmp " +
-            "on lv.id = tmp.id set lv.persisted = 1, lv.node_id = tmp.new_node_id")
-    void resetVector(String workspace);
+    @Select("select id, desc_vector_bin as desc_vector from ling_document_link where workspace=#{workspace} " +
+            "order by id")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(LingDocumentLink.class)
+    void streamLinkVectors(@Param("workspace") String workspace, ResultHandler<LingDocumentLink> handler);
 
-    @Select("select * from `ling_vector` where doc_id = #{docId} limit 1")
-    LingVector queryVectorByDocId(String docId);
+    @Select("select count(*) as count, ifnull(max(id), 0) as max_id from ling_document_link " +
+            "where workspace=#{workspace} and mod(id, #{shardCount}) = #{shard}")
+    IndexManifest queryLinkStats(@Param("workspace") String workspace, @Param("shardCount") int shardCount,
+                                 @Param("shard") int shard);
 
-    @Select("select doc_id,node_id,txt,persisted from `ling_vector` where doc_id = #{docId}")
-    List<LingVector> queryVectorsByDocId(String docId);
+    @Select("select count(*) as count, ifnull(max(node_id), 0) as max_id from ling_vector " +
+            "where workspace=#{workspace} and mod(node_id, #{shardCount}) = #{shard}")
+    IndexManifest queryVectorStats(@Param("workspace") String workspace, @Param("shardCount") int shardCount,
+                                   @Param("shard") int shard);
 
-    @Delete("delete from `ling_vector` where node_id = #{nodeId}")
-    void removeVectorByNodeId(int nodeId);
+    @Select("select node_id, vector_bin as vector from ling_vector where workspace=#{workspace} order by node_id")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(LingVector.class)
+    void streamVectors(@Param("workspace") String workspace, ResultHandler<LingVector> handler);
 
-    @InsertProvider(type = SqlWorkshop.class, method = "batchSaveVectors")
+    @Select("select node_id, doc_id, txt from ling_vector where workspace=#{workspace} order by node_id")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(LingVector.class)
+    void streamChunks(@Param("workspace") String workspace, ResultHandler<LingVector> handler);
+
+    @Select("select ifnull(max(node_id), -1) + 1 from ling_vector")
+    int queryNextNodeId();
+
+    @Select("select ifnull(max(node_id), -1) + 1 from ling_vector where workspace=#{workspace}")
+    int queryNextWorkspaceNodeId(String workspace);
+
+    @Select("select id, doc_id, workspace, node_id, persisted from `ling_vector` " +
+            "where workspace=#{workspace} and doc_id = #{docId} limit 1")
+    LingVector queryVectorByDocId(@Param("workspace") String workspace, @Param("docId") String docId);
+
+    @Select("select doc_id,node_id,txt,persisted from `ling_vector` where workspace=#{workspace} and doc_id = #{docId}")
+    List<LingVector> queryVectorsByDocId(@Param("workspace") String workspace, @Param("docId") String docId);
+
+    @Delete("delete from `ling_vector` where workspace=#{workspace} and node_id = #{nodeId}")
+    void removeVectorByNodeId(@Param("workspace") String workspace, @Param("nodeId") int nodeId);
+
+    @Select("select node_id from `ling_vector` where workspace=#{workspace} and doc_id = #{docId}")
+    List<Integer> queryNodeIdsByDocId(@Param("workspace") String workspace, @Param("docId") String docId);
+
+    @Delete("delete from `ling_vector` where workspace=#{workspace} and doc_id = #{docId}")
+    void removeVectorsByDocId(@Param("workspace") String workspace, @Param("docId") String docId);
+
+    @Insert({
+            "<script>",
+            "insert into `ling_vector` (`doc_id`, `workspace`, `node_id`, `txt`, `vector_bin`, `persisted`) values ",
+            "<foreach collection='list' item='ve' separator=','>",
+            "(#{ve.docId}, #{ve.workspace}, #{ve.nodeId}, #{ve.txt}, #{ve.vector}, #{ve.persisted})",
+            "</foreach>",
+            "</script>"
+    })
+    @Options(useGeneratedKeys = true, keyProperty = "id")
     void batchSaveVectors(List<LingVector> vectors);
 
     @Insert({
             "<script>",
             "insert into `ling_document_link`",
-            "(`doc_id`, `workspace`, `type`, `content`, `content_assistant`, `desc_text`, `desc_vector`)",
+            "(`doc_id`, `workspace`, `type`, `content`, `content_assistant`, `desc_text`, `desc_vector_bin`)",
             "VALUES",
             "<foreach collection='list' item='link' separator=','>",
             "(#{link.docId}, #{link.workspace}, #{link.type}, ",
@@ -59,36 +104,92 @@ public interface SoleMapper {
             "</foreach>",
             "</script>"
     })
+    @Options(useGeneratedKeys = true, keyProperty = "id")
     void batchSaveLinks(List<LingDocumentLink> links);
 
-    @SelectProvider(type = SqlWorkshop.class, method = "queryVectorTxtByNodeIds")
-    List<String> queryVectorTxtByNodeIds(@Param("workspace") String workspace, @Param("nodeIds") List<Integer> nodeIds);
-
     @Insert("insert into `ling_document` (`doc_id`, `workspace`, `text`, `author`, `size`, `source_file_name`, " +
-            "`creation_date`, `page_count`, `char_count`, `word_count`, `sentence_count`, `keywords`) VALUES " +
-            "(#{docId}, #{workspace}, #{text}, #{author}, #{size}, #{sourceFileName}, #{creationDate}, #{pageCount}, " +
-            "#{charCount}, #{wordCount}, #{sentenceCount}, #{keywords})")
+            "`source_type`, `creation_date`, `page_count`, `char_count`, `word_count`, `sentence_count`, `keywords`) " +
+            "VALUES (#{docId}, #{workspace}, #{text}, #{author}, #{size}, #{sourceFileName}, #{sourceType}, " +
+            "#{creationDate}, #{pageCount}, #{charCount}, #{wordCount}, #{sentenceCount}, #{keywords})")
     void saveDocument(LingDocument document);
 
-    @Select("select * from `ling_document` where doc_id = #{docId} limit 1")
-    LingDocument queryDocumentByDocId(String docId);
+    @Select("select * from `ling_document` where workspace=#{workspace} and doc_id = #{docId} limit 1")
+    LingDocument queryDocumentByDocId(@Param("workspace") String workspace, @Param("docId") String docId);
+
+    @Delete("delete from `ling_document` where workspace=#{workspace} and doc_id = #{docId}")
+    int removeDocumentByDocId(@Param("workspace") String workspace, @Param("docId") String docId);
 
-    @Select("select doc_id,workspace,author,size,source_file_name,creation_date,char_count,keywords " +
+    @Select("select doc_id,workspace,author,size,source_file_name,source_type,creation_date,char_count,keywords " +
             "from `ling_document` where workspace=#{workspace}")
     List<LingDocument> queryDocument(String workspace);
 
-    class SqlWorkshop {
-        public String batchSaveVectors(List<LingVector> vectors) {
-            String content = vectors.stream().map(ve -> String
-                    .format("('%s', '%s', '%s', '%s', %s)", ve.getDocId(), ve.getWorkspace(), ve.getTxt(),
-                            ve.getVector(), ve.isPersisted() ? 1 : 0)).collect(Collectors.joining(","));
-            return "insert into `ling_vector` (`doc_id`, `workspace`, `txt`, `vector`, `persisted`) values " + content;
-        }
-
-        public String queryVectorTxtByNodeIds(@Param("workspace") String workspace,
-                                              @Param("nodeIds") List<Integer> nodeIds) {
-            return String.format("select txt from `ling_vector` where workspace= '%s' and node_id in (%s)", workspace,
-                    nodeIds.stream().map(Object::toString).collect(Collectors.joining(",")));
-        }
-    }
+    @Select("select doc_id, source_type, creation_date from `ling_document` where workspace=#{workspace}")
+    List<LingDocument> queryDocumentMetadata(String workspace);
+
+    @Select("select id, doc_id from ling_document_link where workspace=#{workspace}")
+    List<LingDocumentLink> queryLinkDocIds(String workspace);
+
+    @Select("select count(*) from information_schema.columns where table_schema = database() " +
+            "and table_name = #{table} and column_name = #{column}")
+    int countColumn(@Param("table") String table, @Param("column") String column);
+
+    @Update("alter table `ling_vector` add column `vector_bin` mediumblob null after `vector`, " +
+            "modify column `vector` text null")
+    void addVectorBinColumn();
+
+    @Update("alter table `ling_document_link` add column `desc_vector_bin` mediumblob null after `desc_vector`")
+    void addLinkVectorBinColumn();
+
+    @Update("alter table `ling_document` add column `source_type` varchar(32) null after `source_file_name`")
+    void addSourceTypeColumn();
+
+    /**
+     * Confluence pages and other web pages are told apart by their url, an uploaded file and a file read from a
+     * server path both keep only their file name so their type stays unknown
+     */
+    @Update("update `ling_document` set source_type = case " +
+            "when source_file_name like '%/pages/%' or source_file_name like '%/display/%' then 'confluence' " +
+            "else 'web' end where source_type is null and source_file_name like 'http%'")
+    int fillSourceTypes();
+
+    @Select("select id, vector from `ling_vector` where vector_bin is null and vector is not null limit #{batchSize}")
+    List<LingVector> queryTextVectors(int batchSize);
+
+    @Update("update `ling_vector` set vector_bin = #{vector}, vector = null where id = #{id}")
+    void saveBinaryVector(LingVector vector);
+
+    @Select("select id, desc_vector from `ling_document_link` " +
+            "where desc_vector_bin is null and desc_vector is not null limit #{batchSize}")
+    List<LingDocumentLink> queryTextLinkVectors(int batchSize);
+
+    @Update("update `ling_document_link` set desc_vector_bin = #{descVector}, desc_vector = null where id = #{id}")
+    void saveBinaryLinkVector(LingDocumentLink link);
+
+    @Select("select id, vector_bin as vector from `ling_vector` where id > #{afterId} " +
+            "and ascii(substring(vector_bin, 5, 1)) & 1 = 0 order by id limit #{batchSize}")
+    List<LingVector> queryUnnormalizedVectors(@Param("afterId") int afterId, @Param("batchSize") int batchSize);
+
+    @Update("update `ling_vector` set vector_bin = #{vector} where id = #{id}")
+    void saveVector(LingVector vector);
+
+    @Select("select id, desc_vector_bin as desc_vector from `ling_document_link` where id > #{afterId} " +
+            "and ascii(substring(desc_vector_bin, 5, 1)) & 1 = 0 order by id limit #{batchSize}")
+    List<LingDocumentLink> queryUnnormalizedLinkVectors(@Param("afterId") int afterId,
+                                                        @Param("batchSize") int batchSize);
+
+    @Update("update `ling_document_link` set desc_vector_bin = #{descVector} where id = #{id}")
+    void saveLinkVector(LingDocumentLink link);
+
+    @Select("select id from `ling_vector` where node_id is null order by id limit #{batchSize}")
+    List<Integer> queryUnnumberedVectors(int batchSize);
+
+    @Update("update `ling_vector` set node_id = #{nodeId}, persisted = 1 where id = #{id}")
+    void saveNodeId(@Param("id") int id, @Param("nodeId") int nodeId);
+
+    @Select("select count(*) from information_schema.statistics where table_schema = database() " +
+            "and table_name = #{table} and index_name = #{index}")
+    int countIndex(@Param("table") String table, @Param("index") String index);
+
+    @Update("alter table `ling_vector` add index `idx_workspace_node` (`workspace`, `node_id`)")
+    void addNodeIdIndex();
 }
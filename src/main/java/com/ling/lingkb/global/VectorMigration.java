@@ -0,0 +1,91 @@
+package com.ling.lingkb.global;
+
+import com.ling.lingkb.entity.LingDocumentLink;
+import com.ling.lingkb.entity.LingVector;
+import java.util.List;
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Converts the comma separated text vectors of older databases to the binary columns in batches,
+ * the text column of a converted row is cleared so its space is given back. Rows stored before node ids
+ * were stable get one assigned once, after that node ids are only ever handed out on insert. Documents stored
+ * before their source type was recorded get web for an url and upload otherwise. Vectors stored before they
+ * were scaled to unit length are normalized once, zero vectors get the flag as well so no row is read again.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/8
+ */
+@Slf4j
+@Component
+public class VectorMigration {
+    private static final int BATCH_SIZE = 500;
+
+    @Resource
+    private SoleMapper soleMapper;
+
+    @PostConstruct
+    public void migrate() {
+        if (soleMapper.countColumn("ling_vector", "vector") > 0) {
+            if (soleMapper.countColumn("ling_vector", "vector_bin") == 0) {
+                soleMapper.addVectorBinColumn();
+            }
+            int migrated = 0;
+            List<LingVector> vectors;
+            while (!(vectors = soleMapper.queryTextVectors(BATCH_SIZE)).isEmpty()) {
+                vectors.forEach(soleMapper::saveBinaryVector);
+                migrated += vectors.size();
+                log.info("Migrated {} text vectors to the binary column", migrated);
+            }
+        }
+        if (soleMapper.countColumn("ling_document_link", "desc_vector") > 0) {
+            if (soleMapper.countColumn("ling_document_link", "desc_vector_bin") == 0) {
+                soleMapper.addLinkVectorBinColumn();
+            }
+            int migrated = 0;
+            List<LingDocumentLink> links;
+            while (!(links = soleMapper.queryTextLinkVectors(BATCH_SIZE)).isEmpty()) {
+                links.forEach(soleMapper::saveBinaryLinkVector);
+                migrated += links.size();
+                log.info("Migrated {} text link vectors to the binary column", migrated);
+            }
+        }
+        int afterId = 0;
+        int normalized = 0;
+        List<LingVector> vectors;
+        while (!(vectors = soleMapper.queryUnnormalizedVectors(afterId, BATCH_SIZE)).isEmpty()) {
+            // read back scaled to unit length, written again with the normalized flag set
+            vectors.forEach(soleMapper::saveVector);
+            afterId = vectors.get(vectors.size() - 1).getId();
+            normalized += vectors.size();
+            log.info("Normalized {} vectors", normalized);
+        }
+        afterId = 0;
+        normalized = 0;
+        List<LingDocumentLink> links;
+        while (!(links = soleMapper.queryUnnormalizedLinkVectors(afterId, BATCH_SIZE)).isEmpty()) {
+            links.forEach(soleMapper::saveLinkVector);
+            afterId = links.get(links.size() - 1).getId();
+            normalized += links.size();
+            log.info("Normalized {} link vectors", normalized);
+        }
+        if (soleMapper.countColumn("ling_document", "source_type") == 0) {
+            soleMapper.addSourceTypeColumn();
+            log.info("Derived the source type of {} documents", soleMapper.fillSourceTypes());
+        }
+        if (soleMapper.countIndex("ling_vector", "idx_workspace_node") == 0) {
+            soleMapper.addNodeIdIndex();
+        }
+        List<Integer> ids;
+        while (!(ids = soleMapper.queryUnnumberedVectors(BATCH_SIZE)).isEmpty()) {
+            int nodeId = soleMapper.queryNextNodeId();
+            for (int id : ids) {
+                soleMapper.saveNodeId(id, nodeId++);
+            }
+            log.info("Assigned node ids to {} vectors", ids.size());
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.ling.lingkb.global;
+
+import com.ling.lingkb.llm.vector.VectorCodec;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import org.apache.ibatis.type.BaseTypeHandler;
+import org.apache.ibatis.type.JdbcType;
+import org.apache.ibatis.type.MappedTypes;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Maps vector columns to {@code float[]}, written in the binary format of {@link VectorCodec}
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/8
+ */
+@Component
+@MappedTypes(float[].class)
+public class VectorTypeHandler extends BaseTypeHandler<float[]> {
+    private static VectorCodec.Encoding storageEncoding = VectorCodec.Encoding.FLOAT32;
+
+    @Value("${vector.storage.encoding}")
+    public void setStorageEncoding(String value) {
+        storageEncoding = VectorCodec.Encoding.valueOf(value.trim().toUpperCase());
+    }
+
+    @Override
+    public void setNonNullParameter(PreparedStatement ps, int i, float[] parameter, JdbcType jdbcType)
+            throws SQLException {
+        ps.setBytes(i, VectorCodec.encode(parameter, storageEncoding));
+    }
+
+    @Override
+    public float[] getNullableResult(ResultSet rs, String columnName) throws SQLException {
+        return decode(rs.getBytes(columnName));
+    }
+
+    @Override
+    public float[] getNullableResult(ResultSet rs, int columnIndex) throws SQLException {
+        return decode(rs.getBytes(columnIndex));
+    }
+
+    @Override
+    public float[] getNullableResult(CallableStatement cs, int columnIndex) throws SQLException {
+        return decode(cs.getBytes(columnIndex));
+    }
+
+    private static float[] decode(byte[] bytes) {
+        return bytes == null ? null : VectorCodec.decode(bytes);
+    }
+}
@@ -0,0 +1,26 @@
+package com.ling.lingkb.global;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/15
+ */
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+    private WorkspaceContext workspaceContext;
+
+    @Autowired
+    public WebConfig(WorkspaceContext workspaceContext) {
+        this.workspaceContext = workspaceContext;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(workspaceContext);
+    }
+}
@@ -0,0 +1,76 @@
+package com.ling.lingkb.global;
+
+import java.util.regex.Pattern;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * The workspace of the current request, taken from the {@code X-Workspace} header or the {@code workspace}
+ * parameter and falling back to {@code system.workspace}. Async tasks inherit the workspace of the thread that
+ * submitted them.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/15
+ */
+@Component
+public class WorkspaceContext implements HandlerInterceptor, TaskDecorator {
+    public static final String HEADER = "X-Workspace";
+    public static final String PARAMETER = "workspace";
+    /**
+     * Workspace names end up in index file paths
+     */
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private final ThreadLocal<String> current = new ThreadLocal<>();
+    @Value("${system.workspace}")
+    private String defaultWorkspace;
+
+    public String get() {
+        String workspace = current.get();
+        return workspace == null ? defaultWorkspace : workspace;
+    }
+
+    public String getDefault() {
+        return defaultWorkspace;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String workspace = request.getHeader(HEADER);
+        if (StringUtils.isBlank(workspace)) {
+            workspace = request.getParameter(PARAMETER);
+        }
+        if (StringUtils.isNotBlank(workspace)) {
+            if (!NAME.matcher(workspace).matches()) {
+                throw new IllegalArgumentException("Invalid workspace " + workspace);
+            }
+            current.set(workspace);
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        current.remove();
+    }
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        String workspace = current.get();
+        return () -> {
+            current.set(workspace);
+            try {
+                runnable.run();
+            } finally {
+                current.remove();
+            }
+        };
+    }
+}
@@ -3,10 +3,13 @@ package com.ling.lingkb.llm.client;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
+import com.ling.lingkb.entity.CacheStats;
+import com.ling.lingkb.llm.vector.QueryCache;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import javax.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -28,8 +31,16 @@ import org.springframework.web.client.RestTemplate;
 public class EmbeddingClient {
     @Value("${qwen.embedding.url}")
     private String qwenEmbeddingUrl;
+    @Value("${qwen.embedding.cache.size}")
+    private int qwenEmbeddingCacheSize;
+    @Value("${qwen.embedding.cache.ttl.seconds}")
+    private long qwenEmbeddingCacheTtlSeconds;
 
     private RestTemplate restTemplate;
+    /**
+     * Embeddings of recent questions by their normalized text
+     */
+    private QueryCache<String, float[]> questionCache;
 
     @Autowired
     @Lazy
@@ -37,6 +48,31 @@ public class EmbeddingClient {
         this.restTemplate = restTemplate;
     }
 
+    @PostConstruct
+    public void init() {
+        questionCache = new QueryCache<>("embedding", qwenEmbeddingCacheSize, qwenEmbeddingCacheTtlSeconds * 1000);
+    }
+
+    /**
+     * The embedding of a user question, repeated questions are served from the cache. Questions differing only in
+     * case and whitespace share an entry.
+     */
+    public float[] getQuestionEmbedding(String question) {
+        String key = question.trim().replaceAll("\\s+", " ").toLowerCase();
+        float[] embedding = questionCache.get(key);
+        if (embedding == null) {
+            embedding = getEmbedding(question);
+            if (embedding.length > 0) {
+                questionCache.put(key, embedding);
+            }
+        }
+        return embedding;
+    }
+
+    public CacheStats cacheStats() {
+        return questionCache.stats();
+    }
+
     public float[] getEmbedding(String text) {
         log.debug("convert to vector：{}", text);
         HttpHeaders headers = new HttpHeaders();
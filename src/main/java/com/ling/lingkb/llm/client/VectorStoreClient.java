@@ -1,36 +1,72 @@
 package com.ling.lingkb.llm.client;
 
+import com.ling.lingkb.entity.CacheStats;
+import com.ling.lingkb.entity.IndexExplain;
+import com.ling.lingkb.entity.IndexStats;
+import com.ling.lingkb.entity.LingDocument;
 import com.ling.lingkb.entity.LingDocumentLink;
 import com.ling.lingkb.entity.LingVector;
+import com.ling.lingkb.entity.Retrieval;
+import com.ling.lingkb.entity.ScoredNode;
+import com.ling.lingkb.entity.SearchExplain;
+import com.ling.lingkb.entity.SearchFilter;
+import com.ling.lingkb.entity.SearchHit;
+import com.ling.lingkb.entity.TuningPoint;
+import com.ling.lingkb.entity.TuningReport;
+import com.ling.lingkb.entity.WorkspaceStats;
 import com.ling.lingkb.global.SoleMapper;
-import io.github.jbellis.jvector.disk.ReaderSupplier;
-import io.github.jbellis.jvector.disk.ReaderSupplierFactory;
-import io.github.jbellis.jvector.graph.GraphIndexBuilder;
-import io.github.jbellis.jvector.graph.GraphSearcher;
-import io.github.jbellis.jvector.graph.OnHeapGraphIndex;
-import io.github.jbellis.jvector.graph.RandomAccessVectorValues;
+import com.ling.lingkb.llm.vector.ChunkStore;
+import com.ling.lingkb.llm.vector.GraphConfig;
+import com.ling.lingkb.llm.vector.GraphTuner;
+import com.ling.lingkb.llm.vector.IndexGeneration;
+import com.ling.lingkb.llm.vector.IndexManifest;
+import com.ling.lingkb.llm.vector.LexicalIndex;
+import com.ling.lingkb.llm.vector.LinkCache;
+import com.ling.lingkb.llm.vector.MetadataIndex;
+import com.ling.lingkb.llm.vector.NodeBitmap;
+import com.ling.lingkb.llm.vector.NodeType;
+import com.ling.lingkb.llm.vector.PrefixVectorValues;
+import com.ling.lingkb.llm.vector.QueryCache;
+import com.ling.lingkb.llm.vector.ShardedIndex;
+import com.ling.lingkb.llm.vector.TieredMergePolicy;
+import com.ling.lingkb.llm.vector.VectorCodec;
+import com.ling.lingkb.llm.vector.VectorIndexType;
+import com.ling.lingkb.util.LanguageUtil;
 import io.github.jbellis.jvector.graph.SearchResult;
-import io.github.jbellis.jvector.graph.disk.OnDiskGraphIndex;
-import io.github.jbellis.jvector.graph.similarity.BuildScoreProvider;
-import io.github.jbellis.jvector.graph.similarity.DefaultSearchScoreProvider;
-import io.github.jbellis.jvector.graph.similarity.SearchScoreProvider;
 import io.github.jbellis.jvector.util.Bits;
-import static io.github.jbellis.jvector.vector.VectorSimilarityFunction.COSINE;
-import io.github.jbellis.jvector.vector.VectorizationProvider;
-import io.github.jbellis.jvector.vector.types.VectorFloat;
-import io.github.jbellis.jvector.vector.types.VectorTypeSupport;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
@@ -41,7 +77,27 @@ import org.springframework.stereotype.Component;
  */
 @Slf4j
 @Component
+@DependsOn("vectorMigration")
 public class VectorStoreClient {
+    /**
+     * Extra nodes searched per question when links share the text shards
+     */
+    private static final int UNIFIED_LINK_CANDIDATES = 8;
+    private static final int BATCH_QUEUE_PER_THREAD = 64;
+    /**
+     * How many hits of each list take part in the fusion of hybrid search
+     */
+    private static final int HYBRID_CANDIDATES = 20;
+    /**
+     * Longer questions are never answered by the lexical index alone
+     */
+    private static final int LEXICAL_MAX_TERMS = 4;
+    /**
+     * Recall of a tuning run is measured at this depth, a few more than the sentences of an answer
+     */
+    private static final int TUNING_TOP_K = 10;
+    private static final long IDLE_WORKSPACE_MILLIS = 3_600_000;
+
     @Value("${system.workspace}")
     private String workspace;
     @Value("${vector.data.path}")
@@ -52,241 +108,1347 @@ public class VectorStoreClient {
     private String vectorLinkPath;
     @Value("${vector.default.dimension}")
     private int vectorDefaultDimension;
+    /**
+     * The leading dimensions of the Matryoshka embeddings the graphs are built over, 0 or the full dimension to
+     * index the whole vectors
+     */
+    @Value("${vector.index.dimension}")
+    private int vectorIndexDimension;
     @Value("${vector.search.top}")
     private int vectorSearchTop;
     @Value("${vector.search.score}")
     private float vectorSearchScore;
+    @Value("${vector.compaction.ratio}")
+    private double vectorCompactionRatio;
+    /**
+     * heap, disk or auto: disk resident once the full precision vectors would exceed the heap budget
+     */
+    @Value("${vector.index.mode}")
+    private String vectorIndexMode;
+    @Value("${vector.heap.budget.mb}")
+    private long vectorHeapBudgetMb;
+    @Value("${vector.disk.pq.subspaces}")
+    private int vectorDiskPqSubspaces;
+    @Value("${vector.disk.rerank}")
+    private int vectorDiskRerank;
+    @Value("${vector.link.cache.chars}")
+    private long vectorLinkCacheChars;
+    /**
+     * Upper bound of the memory held by the loaded indexes of all workspaces, the least recently used workspaces
+     * are unloaded first
+     */
+    @Value("${vector.workspace.memory.budget.mb}")
+    private long vectorWorkspaceMemoryBudgetMb;
+    /**
+     * Text indexes are partitioned into this many shards by node id, searched in parallel on a pool of their own
+     */
+    @Value("${vector.shard.count}")
+    private int vectorShardCount;
+    /**
+     * Inserts into a disk resident shard are flushed into a new segment once this many are held on heap. A heap
+     * shard has no segments, it is written whole by {@link #persistedSave()}.
+     */
+    @Value("${vector.segment.flush.size}")
+    private int vectorSegmentFlushSize;
+    @Value("${vector.segment.merge.factor}")
+    private int vectorSegmentMergeFactor;
+    /**
+     * flat, ivf, hnsw or auto: chosen by the number of vectors with the two thresholds below
+     */
+    @Value("${vector.engine}")
+    private String vectorEngine;
+    @Value("${vector.engine.flat.max}")
+    private int vectorEngineFlatMax;
+    @Value("${vector.engine.ivf.max}")
+    private int vectorEngineIvfMax;
+    /**
+     * Index the link descriptions in the text shards, so one search per question finds both sentences and link
+     */
+    @Value("${vector.link.unified}")
+    private boolean vectorLinkUnified;
+    /**
+     * Fuse the vector hits with the sentences found by BM25 over the chunk text
+     */
+    @Value("${vector.hybrid.enabled}")
+    private boolean vectorHybridEnabled;
+    @Value("${vector.hybrid.rrf.k}")
+    private int vectorHybridRrfK;
+    @Value("${vector.hybrid.decisive.ratio}")
+    private float vectorHybridDecisiveRatio;
+    @Value("${vector.cache.size}")
+    private int vectorCacheSize;
+    @Value("${vector.cache.ttl.seconds}")
+    private long vectorCacheTtlSeconds;
+    /**
+     * Vectors sampled from a workspace to tune its graph, a few more are held out as queries
+     */
+    @Value("${vector.tuning.sample.size}")
+    private int vectorTuningSampleSize;
+    @Value("${vector.tuning.queries}")
+    private int vectorTuningQueries;
+    @Value("${vector.tuning.latency.slo.ms}")
+    private double vectorTuningLatencySloMs;
 
-    private static final VectorTypeSupport VTS = VectorizationProvider.getInstance().getVectorTypeSupport();
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-    private OnDiskGraphIndex diskIndex;
-    private MutableVectorValues vectorValues;
-    private OnDiskGraphIndex linkDiskIndex;
-    private MutableVectorValues linkVectorValues;
-    private AtomicBoolean consistent = new AtomicBoolean(true);
+    /**
+     * One entry per workspace seen since startup, the indexes are opened on first use
+     */
+    private final ConcurrentHashMap<String, WorkspaceIndex> workspaces = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    /**
+     * Link ids are primary keys of one table, so the cache is shared by all workspaces
+     */
+    private LinkCache linkCache;
+    private ExecutorService shardSearchPool;
+    /**
+     * Runs the queries of {@link #searchBatch}, the queue is bounded and a full queue makes the caller run the
+     * query itself, so a large batch cannot pile up unbounded work
+     */
+    private ExecutorService batchSearchPool;
+    private TieredMergePolicy mergePolicy;
+    /**
+     * Retrievals of recent questions, keyed by the index version of their workspace so any change of the
+     * workspace makes its entries unreachable
+     */
+    private QueryCache<ResultKey, Retrieval> resultCache;
+    /**
+     * The graph parameters of a workspace that was never tuned
+     */
+    private GraphConfig graphDefaults;
+    private final AtomicLong lastSegmentTime = new AtomicLong();
 
     @Resource
     SoleMapper soleMapper;
 
+    /**
+     * Open the index of the default workspace at startup, the other workspaces are opened by their first request
+     */
     @PostConstruct
     public void init() {
-        lock.writeLock().lock();
-        try {
-            soleMapper.resetVector(workspace);
-            vectorValues = new MutableVectorValues(vectorDefaultDimension);
-            List<LingVector> lingVectors = soleMapper.queryAllVector(workspace);
-            vectorValues.addAll(lingVectors);
-            if (vectorValues.size() > 0) {
-                BuildScoreProvider bsp = BuildScoreProvider.randomAccessScoreProvider(vectorValues, COSINE);
-                try (GraphIndexBuilder builder = new GraphIndexBuilder(bsp, vectorDefaultDimension, 16, 100, 1.2f, 1.2f,
-                        false, true)) {
-                    Path dataPath = Path.of(vectorDataPath);
-                    Path bakPath = Path.of(vectorBakPath);
-                    Path parentDir = dataPath.getParent();
-                    if (parentDir != null) {
-                        Files.createDirectories(parentDir);
-                    }
-                    Files.deleteIfExists(bakPath);
-                    if (Files.exists(dataPath)) {
-                        Files.move(dataPath, bakPath, StandardCopyOption.REPLACE_EXISTING);
+        if (!PrefixVectorValues.truncates(vectorIndexDimension, vectorDefaultDimension)) {
+            vectorIndexDimension = 0;
+        }
+        graphDefaults = GraphConfig.builder().indexDimension(vectorIndexDimension).overquery(vectorDiskRerank).build();
+        linkCache = new LinkCache(vectorLinkCacheChars);
+        resultCache = new QueryCache<>("retrieval", vectorCacheSize, vectorCacheTtlSeconds * 1000);
+        mergePolicy = new TieredMergePolicy(vectorSegmentFlushSize, vectorSegmentMergeFactor, vectorCompactionRatio);
+        int processors = Runtime.getRuntime().availableProcessors();
+        shardSearchPool = Executors.newFixedThreadPool(Math.max(1, Math.min(vectorShardCount, processors)),
+                daemonThreads("shard-search-"));
+        batchSearchPool = new ThreadPoolExecutor(processors, processors, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(processors * BATCH_QUEUE_PER_THREAD), daemonThreads("batch-search-"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        open(workspace);
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @PreDestroy
+    public void destroy() {
+        shardSearchPool.shutdown();
+        batchSearchPool.shutdown();
+    }
+
+    /**
+     * The loaded index of the workspace, opened from disk if it was never used or has been evicted
+     */
+    private WorkspaceIndex open(String workspace) {
+        while (true) {
+            WorkspaceIndex index = workspaces.computeIfAbsent(workspace, this::createIndex);
+            index.touch();
+            if (!index.loaded) {
+                index.lock.lock();
+                try {
+                    if (index.retired) {
+                        // dropped from the registry meanwhile, the next lookup creates a new entry
+                        continue;
                     }
-                    OnHeapGraphIndex heapIndex = builder.build(vectorValues);
-                    OnDiskGraphIndex.write(heapIndex, vectorValues, dataPath);
-                    ReaderSupplier rs = ReaderSupplierFactory.open(dataPath);
-                    diskIndex = OnDiskGraphIndex.load(rs);
-                } catch (IOException e) {
-                    log.error("Failed to create index", e);
+                    load(index);
+                } finally {
+                    index.lock.unlock();
                 }
+                evict(index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * The loaded index of the workspace registered for a search, to be released by the caller. An eviction racing
+     * with the search keeps the generations and stores until then.
+     */
+    private WorkspaceIndex acquire(String workspace) {
+        while (true) {
+            WorkspaceIndex index = open(workspace);
+            if (index.acquire()) {
+                return index;
+            }
+        }
+    }
+
+    /**
+     * The index files of the default workspace keep their configured paths, the other workspaces get a folder
+     * of their own next to them. The graph parameters tuned for the workspace are read from there too.
+     */
+    private WorkspaceIndex createIndex(String workspace) {
+        WorkspaceIndex index;
+        if (workspace.equals(this.workspace)) {
+            index = new WorkspaceIndex(workspace, Path.of(vectorDataPath), Path.of(vectorBakPath),
+                    Path.of(vectorLinkPath), vectorShardCount);
+        } else {
+            index = new WorkspaceIndex(workspace, workspacePath(vectorDataPath, workspace),
+                    workspacePath(vectorBakPath, workspace), workspacePath(vectorLinkPath, workspace),
+                    vectorShardCount);
+        }
+        try {
+            index.graph = GraphConfig.read(index.dataPath(0), graphDefaults);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to read the graph tuning of workspace {}, using the defaults", workspace, e);
+            index.graph = graphDefaults;
+        }
+        return index;
+    }
+
+    private static Path workspacePath(String path, String workspace) {
+        Path configured = Path.of(path);
+        return configured.resolveSibling("workspaces").resolve(workspace).resolve(configured.getFileName());
+    }
+
+    /**
+     * Open the index files written by the last run when their manifests still match the database, falling back to
+     * the backup file and rebuilding only the shards that cannot be opened. Called with the lock of the workspace
+     * held.
+     */
+    private void load(WorkspaceIndex index) {
+        if (index.loaded) {
+            return;
+        }
+        index.nextNodeId.set(soleMapper.queryNextWorkspaceNodeId(index.workspace));
+        loadChunks(index);
+        int count = index.text.count();
+        IndexGeneration[] text = new IndexGeneration[count];
+        boolean[] missing = new boolean[count];
+        for (int shard = 0; shard < count; shard++) {
+            text[shard] = restore(shardStats(index, shard), NodeType.TEXT, index.graph, count, index.dataPath(shard),
+                    index.bakPath(shard));
+            missing[shard] = text[shard] == null;
+        }
+        IndexGeneration[] built = buildTextGenerations(index, missing, true);
+        for (int shard = 0; shard < count; shard++) {
+            if (missing[shard]) {
+                text[shard] = built[shard];
+                index.text.markDirty(shard);
+            }
+            IndexGeneration.publish(index.text.shard(shard), text[shard]);
+        }
+        IndexGeneration link = vectorLinkUnified ? null :
+                restore(soleMapper.queryLinkStats(index.workspace, 1, 0), NodeType.LINK, index.graph, 1,
+                        index.linkPath);
+        if (link == null) {
+            link = buildLinkGeneration(index);
+            index.link.markDirty(0);
+        }
+        IndexGeneration.publish(index.link.shard(0), link);
+        index.markLoaded();
+        index.version.incrementAndGet();
+        writeIndex(index);
+    }
+
+    /**
+     * Unload the least recently used workspaces until the loaded indexes fit into the memory budget, their
+     * files are written first so they are opened rather than rebuilt next time.
+     */
+    private void evict(WorkspaceIndex keep) {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            List<WorkspaceIndex> loaded = workspaces.values().stream().filter(index -> index.loaded)
+                    .sorted(Comparator.comparingLong(WorkspaceIndex::getLastAccessTime)).collect(Collectors.toList());
+            long used = loaded.stream().mapToLong(WorkspaceIndex::bytesUsed).sum();
+            long budget = vectorWorkspaceMemoryBudgetMb << 20;
+            for (WorkspaceIndex index : loaded) {
+                if (used <= budget) {
+                    break;
+                }
+                if (index != keep) {
+                    used -= index.bytesUsed();
+                    unload(index);
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void unload(WorkspaceIndex index) {
+        index.lock.lock();
+        try {
+            if (!index.loaded) {
+                return;
+            }
+            writeIndex(index);
+            log.info("Evicting the index of workspace {}", index.workspace);
+            index.unload();
+            index.version.incrementAndGet();
+        } finally {
+            index.lock.unlock();
+        }
+    }
+
+    /**
+     * Memory, size and query rate of every workspace used since startup
+     */
+    public List<WorkspaceStats> stats() {
+        return workspaces.values().stream().map(WorkspaceIndex::stats)
+                .sorted(Comparator.comparing(WorkspaceStats::getWorkspace)).collect(Collectors.toList());
+    }
+
+    /**
+     * Size, build time and graph shape of every text shard and of the link index of the workspace, which is
+     * loaded if it was not
+     */
+    public List<IndexStats> indexStats(String workspace) {
+        WorkspaceIndex index = acquire(workspace);
+        try {
+            List<IndexStats> stats = new ArrayList<>();
+            for (int shard = 0; shard < index.text.count(); shard++) {
+                stats.add(indexStats(index, "text", index.text, shard, index.dataPath(shard)));
+            }
+            stats.add(indexStats(index, "link", index.link, 0, index.linkPath));
+            return stats;
+        } finally {
+            index.release();
+        }
+    }
+
+    private static IndexStats indexStats(WorkspaceIndex index, String name, ShardedIndex sharded, int shard,
+                                         Path path) {
+        IndexGeneration generation = IndexGeneration.acquire(sharded.shard(shard));
+        IndexStats stats = null;
+        if (generation != null) {
+            try {
+                stats = generation.stats(path);
+            } catch (IOException e) {
+                log.warn("Failed to inspect the {} index of workspace {}", name, index.workspace, e);
+            } finally {
+                generation.release();
+            }
+        }
+        if (stats == null) {
+            stats = new IndexStats();
+        }
+        stats.setWorkspace(index.workspace);
+        stats.setIndex(name);
+        stats.setShard(shard);
+        return stats;
+    }
+
+    /**
+     * Build new generations from the database and swap them in shard by shard, searches keep using the previous
+     * generation of a shard until its swap.
+     */
+    public void rebuild(String workspace) {
+        WorkspaceIndex index = lock(workspace);
+        try {
+            rebuild(index);
+        } finally {
+            index.lock.unlock();
+        }
+    }
+
+    /**
+     * Sweep the graph parameters over a sample of the workspace, keep the chosen ones next to its index and
+     * rebuild the index with them
+     *
+     * @return null if the workspace holds too few vectors to hold out the queries
+     */
+    public TuningReport tune(String workspace) {
+        WorkspaceIndex index = open(workspace);
+        List<float[]> sample = sample(workspace, vectorTuningSampleSize + vectorTuningQueries);
+        if (sample.size() < 2 * vectorTuningQueries) {
+            return null;
+        }
+        float[][] queries = sample.subList(0, vectorTuningQueries).toArray(new float[0][]);
+        float[][] base = sample.subList(vectorTuningQueries, sample.size()).toArray(new float[0][]);
+        TuningReport report = new GraphTuner(base, queries, TUNING_TOP_K)
+                .tune(index.graph, (long) (vectorTuningLatencySloMs * 1000));
+        report.setWorkspace(workspace);
+        TuningPoint chosen = report.getChosen();
+        GraphConfig graph = index.graph.toBuilder().maxDegree(chosen.getMaxDegree()).beamWidth(chosen.getBeamWidth())
+                .alpha(chosen.getAlpha()).overquery(chosen.getOverquery()).build();
+        // the entry may have been retired while tuning
+        index = lock(workspace);
+        try {
+            try {
+                createParentDirectories(index.dataPath(0));
+                graph.write(index.dataPath(0));
+            } catch (IOException e) {
+                log.error("Failed to keep the graph tuning of workspace {}", workspace, e);
+            }
+            // set together with the rebuild, so no build under the lock sees the new parameters before it
+            index.graph = graph;
+            rebuild(index);
+        } finally {
+            index.lock.unlock();
+        }
+        return report;
+    }
+
+    /**
+     * A uniform sample of the vectors of the workspace in random order, drawn in one pass
+     */
+    private List<float[]> sample(String workspace, int size) {
+        List<float[]> sample = new ArrayList<>(size);
+        Random random = new Random();
+        long[] seen = {0};
+        soleMapper.streamVectors(workspace, context -> {
+            float[] vector = context.getResultObject().getVector();
+            long i = seen[0]++;
+            if (i < size) {
+                sample.add(vector);
             } else {
-                diskIndex = null;
-            }
-
-            linkVectorValues = new MutableVectorValues(vectorDefaultDimension);
-            List<LingDocumentLink> links = soleMapper.queryLinkVectors(workspace);
-            linkVectorValues.addLinks(links);
-            if (linkVectorValues.size() > 0) {
-                BuildScoreProvider bsp = BuildScoreProvider.randomAccessScoreProvider(linkVectorValues, COSINE);
-                try (GraphIndexBuilder builder = new GraphIndexBuilder(bsp, vectorDefaultDimension, 16, 100, 1.2f, 1.2f,
-                        false, true)) {
-                    Path linkPath = Path.of(vectorLinkPath);
-                    OnHeapGraphIndex heapIndex = builder.build(linkVectorValues);
-                    OnDiskGraphIndex.write(heapIndex, linkVectorValues, linkPath);
-                    ReaderSupplier rs = ReaderSupplierFactory.open(linkPath);
-                    linkDiskIndex = OnDiskGraphIndex.load(rs);
+                long slot = (long) (random.nextDouble() * (i + 1));
+                if (slot < size) {
+                    sample.set((int) slot, vector);
+                }
+            }
+        });
+        Collections.shuffle(sample, random);
+        return sample;
+    }
+
+    private void rebuild(WorkspaceIndex index) {
+        loadChunks(index);
+        boolean[] all = new boolean[index.text.count()];
+        Arrays.fill(all, true);
+        IndexGeneration[] text = buildTextGenerations(index, all, true);
+        for (int shard = 0; shard < text.length; shard++) {
+            IndexGeneration.publish(index.text.shard(shard), text[shard]);
+            index.text.markDirty(shard);
+        }
+        IndexGeneration.publish(index.link.shard(0), buildLinkGeneration(index));
+        index.link.markDirty(0);
+        index.version.incrementAndGet();
+        writeIndex(index);
+    }
+
+    /**
+     * @param type     the type of the nodes of an index written before nodes were typed
+     * @param idStride the shard count of the index the files belong to
+     */
+    private IndexGeneration restore(IndexManifest database, NodeType type, GraphConfig graph, int idStride,
+                                    Path... paths) {
+        for (Path path : paths) {
+            try {
+                IndexManifest manifest = IndexManifest.read(path);
+                if (manifest == null || !manifest.matches(database, vectorDefaultDimension, vectorIndexDimension)) {
+                    log.info("Index {} is missing or out of date", path);
+                    continue;
+                }
+                IndexGeneration generation = IndexGeneration.load(path, manifest, type, graph, idStride);
+                log.info("Opened index {} with {} vectors", path, manifest.getCount());
+                return generation;
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to open index {}", path, e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Build text shards from one pass over the vectors of the workspace, and one over its links when they share the
+     * text shards, routing every row to the shard of its id. The rows go straight into the new generations, no
+     * intermediate list is materialized. Only the rows that still exist are streamed, so the graphs are built over
+     * dense ordinals and the holes left by deleted node ids are absorbed by the ordinal mappings instead of
+     * renumbering the table.
+     *
+     * @param build     the shards to build, the others are left null
+     * @param allowDisk whether a shard over the heap budget is built disk resident, a shard whose disk resident
+     *                  build fails is built again on heap
+     */
+    private IndexGeneration[] buildTextGenerations(WorkspaceIndex index, boolean[] build, boolean allowDisk) {
+        int count = index.text.count();
+        IndexGeneration[] generations = new IndexGeneration[count];
+        IndexGeneration.Builder[] builders = new IndexGeneration.Builder[count];
+        boolean[] failed = new boolean[count];
+        try {
+            for (int shard = 0; shard < count; shard++) {
+                if (build[shard]) {
+                    builders[shard] = textBuilder(index, shard, allowDisk);
+                }
+            }
+            streamText(index, (vector, type, id) -> {
+                IndexGeneration.Builder builder = builders[index.text.shardOf(id)];
+                if (builder != null) {
+                    builder.accept(vector, type, id);
+                }
+            });
+            for (int shard = 0; shard < count; shard++) {
+                if (builders[shard] == null) {
+                    continue;
+                }
+                try {
+                    generations[shard] = builders[shard].build();
                 } catch (IOException e) {
-                    log.error("Failed to create index", e);
+                    log.error("Failed to build the disk resident index, building it on heap instead", e);
+                    failed[shard] = true;
                 }
-            } else {
-                linkDiskIndex = null;
             }
-            consistent.set(true);
         } finally {
-            lock.writeLock().unlock();
+            for (IndexGeneration.Builder builder : builders) {
+                try {
+                    if (builder != null) {
+                        builder.close();
+                    }
+                } catch (IOException e) {
+                    log.warn("Failed to remove the spool of a shard build", e);
+                }
+            }
+        }
+        IndexGeneration[] retried = null;
+        for (int shard = 0; shard < count; shard++) {
+            if (failed[shard]) {
+                retried = retried == null ? buildTextGenerations(index, failed, false) : retried;
+                generations[shard] = retried[shard];
+            }
+        }
+        return generations;
+    }
+
+    private IndexGeneration.Builder textBuilder(WorkspaceIndex index, int shard, boolean allowDisk) {
+        int count = index.text.count();
+        IndexManifest stats = shardStats(index, shard);
+        // the heap budget applies to the whole workspace, the shards are about the same size
+        if (allowDisk && diskResident(stats.getCount() * count)) {
+            try {
+                return IndexGeneration.diskResidentBuilder(segmentPath(index, shard), vectorDefaultDimension,
+                        index.graph, vectorDiskPqSubspaces, engineFor(vectorSegmentFlushSize), count);
+            } catch (IOException e) {
+                log.error("Failed to build the disk resident index, building it on heap instead", e);
+            }
+        }
+        return IndexGeneration.builder(vectorDefaultDimension, index.graph, engineFor(stats.getCount()), count);
+    }
+
+    /**
+     * Row count and largest id of the nodes of a text shard, links included when they share the text shards
+     */
+    private IndexManifest shardStats(WorkspaceIndex index, int shard) {
+        IndexManifest stats = soleMapper.queryVectorStats(index.workspace, index.text.count(), shard);
+        if (vectorLinkUnified) {
+            IndexManifest links = soleMapper.queryLinkStats(index.workspace, index.text.count(), shard);
+            stats.setCount(stats.getCount() + links.getCount());
+            stats.setMaxId(Math.max(stats.getMaxId(), links.getMaxId()));
+        }
+        return stats;
+    }
+
+    private void streamText(WorkspaceIndex index, IndexGeneration.Rows rows) {
+        soleMapper.streamVectors(index.workspace, context -> {
+            LingVector lingVector = context.getResultObject();
+            rows.accept(lingVector.getVector(), NodeType.TEXT, lingVector.getNodeId());
+        });
+        if (vectorLinkUnified) {
+            soleMapper.streamLinkVectors(index.workspace, context -> {
+                LingDocumentLink link = context.getResultObject();
+                rows.accept(link.getDescVector(), NodeType.LINK, link.getId());
+            });
+        }
+    }
+
+    /**
+     * Load the chunk store, the metadata index and, for hybrid search, the lexical index from one pass over the
+     * sentences
+     */
+    private void loadChunks(WorkspaceIndex index) {
+        ChunkStore store = new ChunkStore();
+        LexicalIndex lexicalIndex = new LexicalIndex();
+        MetadataIndex metadataIndex = new MetadataIndex();
+        for (LingDocument document : soleMapper.queryDocumentMetadata(index.workspace)) {
+            metadataIndex.document(document.getDocId(), document.getSourceType(), document.getCreationDate());
+        }
+        soleMapper.streamChunks(index.workspace, context -> {
+            LingVector lingVector = context.getResultObject();
+            store.put(lingVector.getNodeId(), lingVector.getDocId(), lingVector.getTxt());
+            metadataIndex.add(lingVector.getDocId(), NodeType.TEXT, lingVector.getNodeId());
+            if (vectorHybridEnabled) {
+                lexicalIndex.add(lingVector.getNodeId(), LanguageUtil.tokenize(lingVector.getTxt()));
+            }
+        });
+        for (LingDocumentLink link : soleMapper.queryLinkDocIds(index.workspace)) {
+            metadataIndex.add(link.getDocId(), NodeType.LINK, link.getId());
+        }
+        index.chunkStore = store;
+        index.lexicalIndex = lexicalIndex;
+        index.metadataIndex = metadataIndex;
+    }
+
+    /**
+     * The separate link index, left empty when the links are indexed in the text shards
+     */
+    private IndexGeneration buildLinkGeneration(WorkspaceIndex index) {
+        if (vectorLinkUnified) {
+            return IndexGeneration.create(vectorDefaultDimension, index.graph, VectorIndexType.FLAT);
         }
+        IndexGeneration generation = IndexGeneration.create(vectorDefaultDimension, index.graph,
+                engineFor(soleMapper.queryLinkStats(index.workspace, 1, 0).getCount()));
+        soleMapper.streamLinkVectors(index.workspace, context -> {
+            LingDocumentLink link = context.getResultObject();
+            generation.append(link.getDescVector(), NodeType.LINK, link.getId());
+        });
+        return generation.buildGraph();
     }
 
+    /**
+     * Write the shards changed since the last run, inserts and deletes are applied to the live index right away
+     * so the files only need to catch up with it
+     */
     @Scheduled(fixedRate = 600_000)
     public void persistedSave() {
-        lock.writeLock().lock();
+        log.info("Begin persisting the vector index data");
+        for (WorkspaceIndex index : workspaces.values()) {
+            index.lock.lock();
+            try {
+                if (index.loaded) {
+                    writeIndex(index);
+                }
+            } finally {
+                index.lock.unlock();
+            }
+        }
+        evict(null);
+        retireIdle();
+    }
+
+    /**
+     * Drop the workspaces nobody used for an hour from the registry, their files are written first. Any header
+     * names a workspace, so the registry would otherwise keep an entry for every name ever sent.
+     */
+    private void retireIdle() {
+        long idleSince = System.currentTimeMillis() - IDLE_WORKSPACE_MILLIS;
+        for (WorkspaceIndex index : workspaces.values()) {
+            if (index.workspace.equals(workspace) || index.getLastAccessTime() > idleSince) {
+                continue;
+            }
+            unload(index);
+            index.lock.lock();
+            try {
+                if (index.getLastAccessTime() <= idleSince && index.retire()) {
+                    workspaces.remove(index.workspace, index);
+                    log.info("Dropped the idle workspace {}", index.workspace);
+                }
+            } finally {
+                index.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * The background maintenance of every loaded shard: flush heap parts into segments, merge segments by tier and
+     * pack heap generations once their share of tombstones crosses the configured ratio. The vectors are taken from
+     * memory and the segments, so the database is not read again. Only the shards replaced here are written right
+     * away, the others are left to {@link #persistedSave()}.
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void compact() {
+        for (WorkspaceIndex index : workspaces.values()) {
+            if (!index.loaded) {
+                continue;
+            }
+            boolean[] replaced = new boolean[index.text.count()];
+            for (int shard = 0; shard < replaced.length; shard++) {
+                replaced[shard] = compact(index, index.text, shard);
+            }
+            boolean linkReplaced = compact(index, index.link, 0);
+            index.lock.lock();
+            try {
+                if (!index.loaded) {
+                    continue;
+                }
+                for (int shard = 0; shard < replaced.length; shard++) {
+                    if (replaced[shard] && index.text.clearDirty(shard)) {
+                        writeShard(index.text, shard, index.dataPath(shard), index.bakPath(shard));
+                    }
+                }
+                if (linkReplaced && index.link.clearDirty(0)) {
+                    writeShard(index.link, 0, index.linkPath, null);
+                }
+            } finally {
+                index.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * One maintenance step of a shard. The lock of the workspace is only held to take a snapshot of the shard and
+     * to publish the new generation after replaying the inserts and deletes made meanwhile, the new generation is
+     * built from the snapshot while searches, inserts and deletes go on.
+     *
+     * @return whether a new generation replaced the shard
+     */
+    private boolean compact(WorkspaceIndex index, ShardedIndex sharded, int shard) {
+        AtomicReference<IndexGeneration> current = sharded.shard(shard);
+        IndexGeneration generation;
+        IndexGeneration.Snapshot snapshot;
+        index.lock.lock();
         try {
-            log.info("Begin persisting the vector index data");
-            if (!consistent.get()) {
-                init();
+            generation = index.loaded ? IndexGeneration.acquire(current) : null;
+            if (generation == null) {
+                return false;
             }
+            snapshot = generation.snapshot();
         } finally {
-            lock.writeLock().unlock();
+            index.lock.unlock();
+        }
+        try {
+            IndexGeneration compacted = sharded == index.text ? compactText(index, shard, generation, snapshot) :
+                    compactHeap(generation, snapshot);
+            if (compacted == null) {
+                return false;
+            }
+            index.lock.lock();
+            try {
+                if (current.get() != generation) {
+                    // rebuilt or evicted meanwhile
+                    compacted.release();
+                    return false;
+                }
+                IndexGeneration.publish(current, compacted.catchUp(generation, snapshot));
+                sharded.markDirty(shard);
+                return true;
+            } finally {
+                index.lock.unlock();
+            }
+        } catch (IOException e) {
+            log.error("Failed to compact shard {} of workspace {}", shard, index.workspace, e);
+            return false;
+        } finally {
+            generation.release();
+        }
+    }
+
+    /**
+     * One maintenance step of a text shard: switch between heap and disk resident, flush the heap part into a new
+     * segment, merge segments or pack a heap generation
+     *
+     * @return the generation to publish, null if nothing is due
+     */
+    private IndexGeneration compactText(WorkspaceIndex index, int shard, IndexGeneration generation,
+                                        IndexGeneration.Snapshot snapshot) throws IOException {
+        boolean disk = diskResident(index.text.liveSize());
+        if (!disk && generation.isDiskResident()) {
+            log.info("Moving shard {} of the text index of {} nodes on heap", shard, generation.size());
+            return generation.compact(snapshot, engineFor(generation.liveSize()));
+        }
+        if (disk && generation.heapSize() > 0 &&
+                (mergePolicy.shouldFlush(generation) || !generation.isDiskResident())) {
+            log.info("Flushing {} nodes of shard {} into a new segment", generation.heapSize(), shard);
+            return generation.flush(snapshot, segmentPath(index, shard), vectorDiskPqSubspaces,
+                    engineFor(vectorSegmentFlushSize));
+        }
+        int[] merge = generation.isDiskResident() ? mergePolicy.findMerge(generation) : null;
+        if (merge != null) {
+            log.info("Merging segments {} to {} of shard {}", merge[0], merge[1] - 1, shard);
+            return generation.merge(snapshot, merge[0], merge[1], segmentPath(index, shard), vectorDiskPqSubspaces);
+        }
+        return generation.isDiskResident() ? null : compactHeap(generation, snapshot);
+    }
+
+    /**
+     * Pack a heap generation once its share of tombstones crosses the configured ratio, or move it to another
+     * engine once the number of live nodes has outgrown the current one
+     *
+     * @return the generation to publish, null if nothing is due
+     */
+    private IndexGeneration compactHeap(IndexGeneration generation, IndexGeneration.Snapshot snapshot)
+            throws IOException {
+        VectorIndexType engine = engineFor(generation.liveSize());
+        if (engine != generation.getType()) {
+            log.info("Moving index of {} nodes from {} to {}", generation.liveSize(), generation.getType(), engine);
+            return generation.compact(snapshot, engine);
+        }
+        if (generation.deletedRatio() >= vectorCompactionRatio) {
+            log.info("Compacting index with {} of {} nodes deleted", generation.size() - generation.liveSize(),
+                    generation.size());
+            return generation.compact(snapshot, engine);
+        }
+        return null;
+    }
+
+    /**
+     * A new segment file of the shard, named by time so later segments sort after earlier ones
+     */
+    private Path segmentPath(WorkspaceIndex index, int shard) throws IOException {
+        long time = lastSegmentTime.updateAndGet(last -> Math.max(last + 1, System.currentTimeMillis()));
+        Path path = Path.of(index.dataPath(shard) + ".seg-" + time);
+        createParentDirectories(path);
+        return path;
+    }
+
+    /**
+     * The engine of a heap index of {@code count} vectors, the heap part of a disk resident shard never grows
+     * beyond the flush size
+     */
+    private VectorIndexType engineFor(int count) {
+        switch (vectorEngine) {
+            case "flat":
+                return VectorIndexType.FLAT;
+            case "ivf":
+                return VectorIndexType.IVF_FLAT;
+            case "hnsw":
+                return VectorIndexType.HNSW;
+            default:
+                return VectorIndexType.select(count, vectorEngineFlatMax, vectorEngineIvfMax);
+        }
+    }
+
+    /**
+     * Whether a text index of {@code count} vectors is kept disk resident with only product quantized codes on heap
+     */
+    private boolean diskResident(int count) {
+        switch (vectorIndexMode) {
+            case "disk":
+                return count > 0;
+            case "heap":
+                return false;
+            default:
+                return (long) count * vectorDefaultDimension * Float.BYTES > vectorHeapBudgetMb << 20;
+        }
+    }
+
+    /**
+     * The index of the workspace with its lock held, to be unlocked by the caller
+     */
+    private WorkspaceIndex lock(String workspace) {
+        while (true) {
+            WorkspaceIndex index = open(workspace);
+            index.lock.lock();
+            if (index.retired) {
+                index.lock.unlock();
+                continue;
+            }
+            try {
+                // the index may have been evicted between opening and locking it
+                load(index);
+            } catch (RuntimeException e) {
+                index.lock.unlock();
+                throw e;
+            }
+            return index;
         }
     }
 
-    public void setToInconsistent() {
-        consistent.set(false);
+    /**
+     * Delete a sentence, its node is tombstoned so it disappears from searches without a rebuild
+     */
+    public void removeNode(String workspace, int nodeId) {
+        WorkspaceIndex index = lock(workspace);
+        try {
+            soleMapper.removeVectorByNodeId(workspace, nodeId);
+            index.chunkStore.remove(nodeId);
+            index.lexicalIndex.remove(nodeId);
+            index.text.delete(NodeType.TEXT, nodeId);
+            index.version.incrementAndGet();
+        } finally {
+            index.lock.unlock();
+        }
     }
 
-    public List<String> searchTopK(float[] query) {
-        lock.readLock().lock();
+    /**
+     * Delete a document together with its sentences and links, all of their nodes are tombstoned in one batch
+     *
+     * @return false if the document does not exist
+     */
+    public boolean removeDocument(String workspace, String docId) {
+        WorkspaceIndex index = lock(workspace);
         try {
-            if (diskIndex == null) {
-                return new ArrayList<>();
+            List<Integer> nodeIds = soleMapper.queryNodeIdsByDocId(workspace, docId);
+            List<Integer> linkIds = soleMapper.queryLinkIdsByDocId(workspace, docId);
+            soleMapper.removeVectorsByDocId(workspace, docId);
+            soleMapper.removeLinksByDocId(workspace, docId);
+            boolean removed = soleMapper.removeDocumentByDocId(workspace, docId) > 0;
+            index.metadataIndex.removeDocument(docId);
+            for (int nodeId : nodeIds) {
+                index.chunkStore.remove(nodeId);
+                index.lexicalIndex.remove(nodeId);
+                index.text.delete(NodeType.TEXT, nodeId);
+            }
+            ShardedIndex links = vectorLinkUnified ? index.text : index.link;
+            for (int linkId : linkIds) {
+                linkCache.remove(linkId);
+                links.delete(NodeType.LINK, linkId);
             }
-            VectorFloat<?> queryVector = VTS.createFloatVector(query);
-            SearchResult sr =
-                    GraphSearcher.search(queryVector, vectorSearchTop, vectorValues, COSINE, diskIndex, Bits.ALL);
-            return queryVectorTxt(sr);
+            index.version.incrementAndGet();
+            return removed || !nodeIds.isEmpty() || !linkIds.isEmpty();
         } finally {
-            lock.readLock().unlock();
+            index.lock.unlock();
         }
     }
 
-    private List<String> queryVectorTxt(SearchResult sr) {
-        List<Integer> nodeIds = getNodeIds(sr);
-        if (nodeIds.isEmpty()) {
-            return new ArrayList<>();
-        } else {
-            return soleMapper.queryVectorTxtByNodeIds(workspace, nodeIds);
+    /**
+     * Append the vectors of newly stored sentences to the live graphs, the stable node id of each sentence is
+     * assigned here and saved together with the sentence so that search results can be mapped back without a
+     * rebuild. The node id decides the shard of the sentence. The sentences are tokenized for the lexical index
+     * before the workspace is locked.
+     */
+    public void addVectors(String workspace, List<LingVector> lingVectors, List<float[]> vectors) {
+        List<List<String>> terms = vectorHybridEnabled ?
+                lingVectors.stream().map(lingVector -> LanguageUtil.tokenize(lingVector.getTxt()))
+                        .collect(Collectors.toList()) : null;
+        WorkspaceIndex index = lock(workspace);
+        try {
+            for (LingVector lingVector : lingVectors) {
+                lingVector.setNodeId(index.nextNodeId.getAndIncrement());
+                lingVector.setPersisted(true);
+            }
+            // the rows go first, a failed insert leaves no ordinal in the graph that resolves to no row
+            soleMapper.batchSaveVectors(lingVectors);
+            registerDocuments(index, lingVectors.stream().map(LingVector::getDocId));
+            for (int i = 0; i < lingVectors.size(); i++) {
+                LingVector lingVector = lingVectors.get(i);
+                int nodeId = lingVector.getNodeId();
+                index.chunkStore.put(nodeId, lingVector.getDocId(), lingVector.getTxt());
+                index.metadataIndex.add(lingVector.getDocId(), NodeType.TEXT, nodeId);
+                if (terms != null) {
+                    index.lexicalIndex.add(nodeId, terms.get(i));
+                }
+                IndexGeneration generation = index.text.shardFor(nodeId).get();
+                generation.index(generation.add(vectors.get(i)), NodeType.TEXT, nodeId);
+                index.text.markDirty(index.text.shardOf(nodeId));
+            }
+            index.version.incrementAndGet();
+        } finally {
+            index.lock.unlock();
         }
     }
 
-    private LingDocumentLink queryLink(SearchResult sr) {
-        List<Integer> nodeIds = getNodeIds(sr);
-        if (nodeIds.isEmpty()) {
-            return null;
-        } else {
-            return soleMapper.queryLink(workspace, nodeIds.get(0));
+    /**
+     * Append the description vectors of newly stored links to the live link graph, each node is bound to the id
+     * of its link row. Shared with the text shards the link id is only known after the insert and decides the
+     * shard of the link.
+     */
+    public void addLinks(String workspace, List<LingDocumentLink> links, List<float[]> vectors) {
+        WorkspaceIndex index = lock(workspace);
+        try {
+            if (vectorLinkUnified) {
+                soleMapper.batchSaveLinks(links);
+                registerDocuments(index, links.stream().map(LingDocumentLink::getDocId));
+                for (int i = 0; i < links.size(); i++) {
+                    int linkId = links.get(i).getId();
+                    IndexGeneration generation = index.text.shardFor(linkId).get();
+                    generation.index(generation.add(vectors.get(i)), NodeType.LINK, linkId);
+                    index.metadataIndex.add(links.get(i).getDocId(), NodeType.LINK, linkId);
+                    index.text.markDirty(index.text.shardOf(linkId));
+                }
+                index.version.incrementAndGet();
+                return;
+            }
+            soleMapper.batchSaveLinks(links);
+            registerDocuments(index, links.stream().map(LingDocumentLink::getDocId));
+            IndexGeneration generation = index.link.shard(0).get();
+            for (int i = 0; i < links.size(); i++) {
+                generation.index(generation.add(vectors.get(i)), NodeType.LINK, links.get(i).getId());
+                index.metadataIndex.add(links.get(i).getDocId(), NodeType.LINK, links.get(i).getId());
+            }
+            index.link.markDirty(0);
+            index.version.incrementAndGet();
+        } finally {
+            index.lock.unlock();
         }
     }
 
-    private List<Integer> getNodeIds(SearchResult sr) {
-        List<Integer> nodeIds = new ArrayList<>();
-        for (SearchResult.NodeScore nodeScore : sr.getNodes()) {
-            if (nodeScore.score >= vectorSearchScore) {
-                nodeIds.add(nodeScore.node);
+    /**
+     * Register the documents not yet known to the metadata index with their source type and creation date, the
+     * document row is stored before its sentences and links
+     */
+    private void registerDocuments(WorkspaceIndex index, Stream<String> docIds) {
+        docIds.distinct().filter(docId -> !index.metadataIndex.contains(docId)).forEach(docId -> {
+            LingDocument document = soleMapper.queryDocumentByDocId(index.workspace, docId);
+            index.metadataIndex.document(docId, document == null ? null : document.getSourceType(),
+                    document == null ? 0 : document.getCreationDate());
+        });
+    }
+
+    /**
+     * Write the shards changed since they were last written, called with the lock of the workspace held so no
+     * insert is in progress
+     */
+    private void writeIndex(WorkspaceIndex index) {
+        for (int shard = 0; shard < index.text.count(); shard++) {
+            if (index.text.clearDirty(shard)) {
+                writeShard(index.text, shard, index.dataPath(shard), index.bakPath(shard));
             }
         }
-        return nodeIds;
+        if (index.link.clearDirty(0)) {
+            writeShard(index.link, 0, index.linkPath, null);
+        }
     }
 
-    public LingDocumentLink searchLink(float[] query) {
-        lock.readLock().lock();
+    private void writeShard(ShardedIndex sharded, int shard, Path path, Path bakPath) {
+        IndexGeneration generation = IndexGeneration.acquire(sharded.shard(shard));
         try {
-            if (linkDiskIndex == null) {
-                return null;
+            if (generation.size() > 0) {
+                createParentDirectories(path);
+                IndexManifest replaced = IndexManifest.read(bakPath != null ? bakPath : path);
+                if (bakPath != null) {
+                    createParentDirectories(bakPath);
+                    IndexManifest.move(path, bakPath);
+                }
+                generation.write(path);
+                IndexManifest.removeSegments(replaced, path, bakPath);
             }
-            VectorFloat<?> queryVector = VTS.createFloatVector(query);
-            SearchResult sr =
-                    GraphSearcher.search(queryVector, 1, linkVectorValues, COSINE, linkDiskIndex, Bits.ALL);
-            return queryLink(sr);
+        } catch (IOException | RuntimeException e) {
+            sharded.markDirty(shard);
+            log.error("Failed to write index {}", path, e);
         } finally {
-            lock.readLock().unlock();
+            generation.release();
+        }
+    }
+
+    private static void createParentDirectories(Path path) throws IOException {
+        Path parentDir = path.getParent();
+        if (parentDir != null) {
+            Files.createDirectories(parentDir);
         }
     }
 
-    private List<String> searchTopExactMatches(float[] query, int k) throws IOException {
-        lock.readLock().lock();
-        try (GraphSearcher searcher = new GraphSearcher(diskIndex)) {
-            VectorFloat<?> queryVector = VTS.createFloatVector(query);
-            SearchScoreProvider ssp = DefaultSearchScoreProvider.exact(queryVector, COSINE, vectorValues);
-            SearchResult sr = searcher.search(ssp, k, Bits.ALL);
-            return queryVectorTxt(sr);
+    /**
+     * The sentences closest to the question and the best link, the shards are searched in parallel. With the links
+     * in the text shards both come out of a single search. With hybrid search the vector hits are fused with the
+     * sentences found by the lexical index. A question repeated while its workspace is unchanged is answered from
+     * the result cache.
+     *
+     * @param filter restricts the sentences and the link to some documents, null for no restriction
+     */
+    public Retrieval retrieve(String workspace, String question, float[] query, SearchFilter filter) {
+        List<String> terms = vectorHybridEnabled ? LanguageUtil.tokenize(question) : null;
+        float[] unitQuery = unit(query);
+        WorkspaceIndex index = acquire(workspace);
+        try {
+            index.countQuery();
+            // the version is read before searching, a change during the search leaves the entry unreachable
+            ResultKey key = new ResultKey(workspace, index.version.get(), quantize(unitQuery), filter, terms);
+            Retrieval cached = resultCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            Retrieval retrieval = retrieve(index, unitQuery, filter, terms, null);
+            resultCache.put(key, retrieval);
+            return retrieval;
         } finally {
-            lock.readLock().unlock();
+            index.release();
         }
     }
 
-    private float[] stringToFloats(String str) {
-        float[] array = new float[vectorDefaultDimension];
-        int currentPos = 0;
-        int nextComma;
-        int index = 0;
-        final int length = str.length();
+    /**
+     * Retrieve like {@link #retrieve(String, String, float[], SearchFilter)} and report the nodes the indexes
+     * visited and scored and where the time went. The vector search always runs, it is neither served from the
+     * result cache nor counted as a query.
+     */
+    public SearchExplain explain(String workspace, String question, float[] query, SearchFilter filter) {
+        List<String> terms = vectorHybridEnabled ? LanguageUtil.tokenize(question) : null;
+        SearchExplain explain = new SearchExplain();
+        WorkspaceIndex index = acquire(workspace);
+        try {
+            explain.setRetrieval(retrieve(index, unit(query), filter, terms, explain));
+        } finally {
+            index.release();
+        }
+        return explain;
+    }
 
-        while (currentPos < length && index < vectorDefaultDimension) {
-            nextComma = str.indexOf(',', currentPos);
-            if (nextComma == -1) {
-                nextComma = length;
+    /**
+     * @param explain filled with the counts and timings of the search, null when they are not needed
+     */
+    private Retrieval retrieve(WorkspaceIndex index, float[] query, SearchFilter filter, List<String> terms,
+                               SearchExplain explain) {
+        NodeBitmap accept = index.metadataIndex.accept(filter);
+        if (accept != null && accept.isEmpty()) {
+            return Retrieval.builder().hits(new ArrayList<>()).build();
+        }
+        int candidates = vectorHybridEnabled ? Math.max(vectorSearchTop, HYBRID_CANDIDATES) : vectorSearchTop;
+        int textTopK = vectorLinkUnified ? candidates + UNIFIED_LINK_CANDIDATES : candidates;
+        long start = System.nanoTime();
+        SearchResult result = index.text.searchResult(query, textTopK, textTopK * index.graph.getOverquery(),
+                accept, shardSearchPool);
+        long traversed = System.nanoTime();
+        List<SearchResult.NodeScore> nodes = Arrays.asList(result.getNodes());
+        List<SearchHit> hits = hits(index, nodes, candidates);
+        long hydrated = System.nanoTime();
+        if (vectorHybridEnabled) {
+            hits = fuse(index, hits,
+                    index.lexicalIndex.search(terms, HYBRID_CANDIDATES, accept == null ? Bits.ALL : accept));
+        } else {
+            hits = hits.subList(0, Math.min(vectorSearchTop, hits.size()));
+        }
+        long fused = System.nanoTime();
+        SearchResult linkResult =
+                vectorLinkUnified && hasLink(nodes) ? null : searchLinks(index, query, accept, shardSearchPool);
+        long linkTraversed = System.nanoTime();
+        LingDocumentLink link = bestLink(linkResult == null ? nodes : Arrays.asList(linkResult.getNodes()));
+        long end = System.nanoTime();
+        if (explain != null) {
+            explain.setText(explain(result, textTopK, textTopK * index.graph.getOverquery(), traversed - start));
+            if (linkResult != null) {
+                explain.setLink(explain(linkResult, 1, linkRerankK(index), linkTraversed - fused));
             }
+            explain.setHydrationMicros((hydrated - traversed + end - linkTraversed) / 1000);
+            explain.setLexicalMicros(vectorHybridEnabled ? (fused - hydrated) / 1000 : 0);
+            explain.setTotalMicros((end - start) / 1000);
+        }
+        return Retrieval.builder().hits(hits).link(link).build();
+    }
 
-            array[index++] = Float.parseFloat(str.substring(currentPos, nextComma).trim());
-            currentPos = nextComma + 1;
+    private static IndexExplain explain(SearchResult result, int topK, int rerankK, long nanos) {
+        List<ScoredNode> nodes = Arrays.stream(result.getNodes()).map(nodeScore -> ScoredNode.builder()
+                .type(NodeType.ofKey(nodeScore.node).name()).id(NodeType.idOf(nodeScore.node)).score(nodeScore.score)
+                .build()).collect(Collectors.toList());
+        return IndexExplain.builder().topK(topK).rerankK(rerankK).visited(result.getVisitedCount())
+                .expanded(result.getExpandedCount()).expandedBaseLayer(result.getExpandedCountBaseLayer())
+                .reranked(result.getRerankedCount()).traversalMicros(nanos / 1000).nodes(nodes).build();
+    }
+
+    /**
+     * The query rounded to 8 bits per dimension relative to its largest component, so the embeddings of one
+     * question match even when the embedding server returns them with slightly different low order bits
+     */
+    private static byte[] quantize(float[] query) {
+        float max = 0;
+        for (float value : query) {
+            max = Math.max(max, Math.abs(value));
         }
-        return array;
+        byte[] codes = new byte[query.length];
+        for (int i = 0; max > 0 && i < query.length; i++) {
+            codes[i] = (byte) Math.round(query[i] / max * 127);
+        }
+        return codes;
     }
 
-    public class MutableVectorValues implements RandomAccessVectorValues {
-        private final List<VectorFloat<?>> vectors = new ArrayList<>();
-        private final int dimension;
+    public CacheStats cacheStats() {
+        return resultCache.stats();
+    }
 
-        MutableVectorValues(int dimension) {
-            this.dimension = dimension;
+    /**
+     * Answer a short keyword question from the lexical index alone, without an embedding, when its best sentence
+     * contains every term of the question and outscores the runner up by the configured ratio
+     *
+     * @return null if the lexical result is not decisive
+     */
+    public Retrieval retrieveLexical(String workspace, String question, SearchFilter filter) {
+        if (!vectorHybridEnabled) {
+            return null;
+        }
+        List<String> terms = LanguageUtil.tokenize(question);
+        if (terms.isEmpty() || terms.size() > LEXICAL_MAX_TERMS) {
+            return null;
         }
+        WorkspaceIndex index = acquire(workspace);
+        try {
+            NodeBitmap accept = index.metadataIndex.accept(filter);
+            SearchResult.NodeScore[] nodes = index.lexicalIndex.search(terms, 2, accept == null ? Bits.ALL : accept);
+            if (nodes.length == 0 || nodes.length > 1 && nodes[0].score < nodes[1].score * vectorHybridDecisiveRatio
+                    || !index.lexicalIndex.containsAll(nodes[0].node, terms)) {
+                return null;
+            }
+            SearchHit hit = index.chunkStore.hit(nodes[0].node, nodes[0].score);
+            if (hit == null) {
+                return null;
+            }
+            index.countQuery();
+            return Retrieval.builder().hits(List.of(hit)).build();
+        } finally {
+            index.release();
+        }
+    }
 
-        void addAll(List<LingVector> lingVectors) {
-            for (LingVector lingVector : lingVectors) {
-                float[] vector = stringToFloats(lingVector.getVector());
-                if (vector.length != dimension) {
-                    throw new IllegalArgumentException(
-                            String.format("Vector dimension mismatch. Expected %d, got %d", dimension, vector.length));
-                }
-                vectors.add(VTS.createFloatVector(vector));
+    /**
+     * Reciprocal rank fusion: each list adds {@code 1 / (k + rank)} to every sentence it holds, so a sentence ranked
+     * high by either list comes out on top without comparing cosine with BM25 scores
+     */
+    private List<SearchHit> fuse(WorkspaceIndex index, List<SearchHit> vectorHits, SearchResult.NodeScore[] lexical) {
+        Map<Integer, Float> scores = new HashMap<>();
+        for (int rank = 0; rank < vectorHits.size(); rank++) {
+            scores.merge(vectorHits.get(rank).getNodeId(), 1f / (vectorHybridRrfK + rank + 1), Float::sum);
+        }
+        for (int rank = 0; rank < lexical.length; rank++) {
+            scores.merge(lexical[rank].node, 1f / (vectorHybridRrfK + rank + 1), Float::sum);
+        }
+        ChunkStore store = index.chunkStore;
+        return scores.entrySet().stream().sorted(Map.Entry.<Integer, Float>comparingByValue().reversed())
+                .map(entry -> store.hit(entry.getKey(), entry.getValue())).filter(Objects::nonNull)
+                .limit(vectorSearchTop).collect(Collectors.toList());
+    }
+
+    /**
+     * The sentences closest to the query in descending score order, the shards are searched in parallel
+     */
+    public List<SearchHit> searchTopK(String workspace, float[] query) {
+        WorkspaceIndex index = acquire(workspace);
+        try {
+            index.countQuery();
+            return searchText(index, unit(query), vectorSearchTop, shardSearchPool);
+        } finally {
+            index.release();
+        }
+    }
+
+    /**
+     * Search many queries at once, for evaluation jobs and query expansion. Every query is run by one worker of
+     * the batch pool which searches the shards in turn, reusing the pooled searchers of the indexes.
+     *
+     * @param topK the sentences per query, the configured number when not positive
+     * @return the sentences of every query in query order
+     */
+    public List<List<SearchHit>> searchBatch(String workspace, List<float[]> queries, int topK) {
+        int k = topK > 0 ? topK : vectorSearchTop;
+        WorkspaceIndex index = acquire(workspace);
+        try {
+            List<CompletableFuture<List<SearchHit>>> futures = new ArrayList<>(queries.size());
+            for (float[] query : queries) {
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    index.countQuery();
+                    return searchText(index, unit(query), k, Runnable::run);
+                }, batchSearchPool));
             }
+            return futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+        } finally {
+            index.release();
         }
+    }
+
+    private List<SearchHit> searchText(WorkspaceIndex index, float[] query, int topK, Executor executor) {
+        List<SearchResult.NodeScore> nodes = vectorLinkUnified ? searchUnified(index, query, topK, null, executor) :
+                index.text.search(query, topK, topK * index.graph.getOverquery(), executor);
+        return hits(index, nodes, topK);
+    }
+
+    /**
+     * Fetch the link of the best hit by primary key, the content is served from the cache when the link was shown
+     * recently.
+     */
+    public LingDocumentLink searchLink(String workspace, float[] query) {
+        WorkspaceIndex index = acquire(workspace);
+        try {
+            return bestLink(Arrays.asList(searchLinks(index, unit(query), null, shardSearchPool).getNodes()));
+        } finally {
+            index.release();
+        }
+    }
+
+    /**
+     * The best link node, from the separate link index or from the text shards accepting links only when the
+     * links are kept with the texts. A single result still gets the candidate width of a text search, a beam of
+     * one would stop at the first local maximum of the graph.
+     */
+    private SearchResult searchLinks(WorkspaceIndex index, float[] query, NodeBitmap accept, Executor executor) {
+        if (vectorLinkUnified) {
+            return index.text.searchResult(query, 1, linkRerankK(index), accept, NodeType.LINK, executor);
+        }
+        return index.link.searchResult(query, 1, linkRerankK(index), accept, executor);
+    }
+
+    private static boolean hasLink(List<SearchResult.NodeScore> nodes) {
+        return nodes.stream().anyMatch(nodeScore -> NodeType.ofKey(nodeScore.node) == NodeType.LINK);
+    }
+
+    private int linkRerankK(WorkspaceIndex index) {
+        return vectorSearchTop * index.graph.getOverquery();
+    }
+
+    /**
+     * A unit length copy of the query, the indexes score by dot product over normalized vectors
+     */
+    private static float[] unit(float[] query) {
+        return VectorCodec.normalize(query.clone());
+    }
 
-        void addLinks(List<LingDocumentLink> links) {
-            for (LingDocumentLink link : links) {
-                float[] vector = stringToFloats(link.getDescVector());
-                if (vector.length != dimension) {
-                    throw new IllegalArgumentException(
-                            String.format("Vector dimension mismatch. Expected %d, got %d", dimension, vector.length));
+    /**
+     * Search the text shards for a few more nodes than sentences are needed, links ranking among them would
+     * otherwise take the place of sentences
+     */
+    private List<SearchResult.NodeScore> searchUnified(WorkspaceIndex index, float[] query, int topK,
+                                                       NodeBitmap accept, Executor executor) {
+        int candidates = topK + UNIFIED_LINK_CANDIDATES;
+        return index.text.search(query, candidates, candidates * index.graph.getOverquery(), accept, executor);
+    }
+
+    private List<SearchHit> hits(WorkspaceIndex index, List<SearchResult.NodeScore> nodes, int topK) {
+        ChunkStore store = index.chunkStore;
+        List<SearchHit> hits = new ArrayList<>();
+        for (SearchResult.NodeScore nodeScore : nodes) {
+            if (hits.size() == topK) {
+                break;
+            }
+            if (nodeScore.score >= vectorSearchScore && NodeType.ofKey(nodeScore.node) == NodeType.TEXT) {
+                SearchHit hit = store.hit(nodeScore.node, nodeScore.score);
+                if (hit != null) {
+                    hits.add(hit);
                 }
-                vectors.add(VTS.createFloatVector(vector));
             }
         }
+        return hits;
+    }
 
-        @Override
-        public int size() {
-            return vectors.size();
+    private LingDocumentLink bestLink(List<SearchResult.NodeScore> nodes) {
+        SearchResult.NodeScore best =
+                nodes.stream().filter(nodeScore -> NodeType.ofKey(nodeScore.node) == NodeType.LINK).findFirst()
+                        .orElse(null);
+        if (best == null || best.score < vectorSearchScore) {
+            return null;
         }
-
-        @Override
-        public int dimension() {
-            return dimension;
+        int linkId = NodeType.idOf(best.node);
+        LingDocumentLink link = linkCache.get(linkId);
+        if (link == null) {
+            link = soleMapper.queryLinkById(linkId);
+            if (link != null) {
+                linkCache.put(link);
+            }
         }
+        return link;
+    }
 
-        @Override
-        public VectorFloat<?> getVector(int i) {
-            return vectors.get(i);
+    private static final class ResultKey {
+        private final String workspace;
+        private final long version;
+        private final byte[] query;
+        private final SearchFilter filter;
+        /**
+         * The lexical half of a hybrid search depends on the question text rather than its embedding
+         */
+        private final List<String> terms;
+
+        ResultKey(String workspace, long version, byte[] query, SearchFilter filter, List<String> terms) {
+            this.workspace = workspace;
+            this.version = version;
+            this.query = query;
+            this.filter = filter;
+            this.terms = terms;
         }
 
         @Override
-        public boolean isValueShared() {
-            return false;
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ResultKey)) {
+                return false;
+            }
+            ResultKey other = (ResultKey) o;
+            return version == other.version && workspace.equals(other.workspace) &&
+                    Arrays.equals(query, other.query) && Objects.equals(filter, other.filter) &&
+                    Objects.equals(terms, other.terms);
         }
 
         @Override
-        public RandomAccessVectorValues copy() {
-            MutableVectorValues copy = new MutableVectorValues(dimension);
-            copy.vectors.addAll(this.vectors);
-            return copy;
+        public int hashCode() {
+            return Objects.hash(workspace, version, Arrays.hashCode(query), filter, terms);
         }
     }
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,200 @@
+package com.ling.lingkb.llm.client;
+
+import com.ling.lingkb.entity.WorkspaceStats;
+import com.ling.lingkb.llm.vector.ChunkStore;
+import com.ling.lingkb.llm.vector.GraphConfig;
+import com.ling.lingkb.llm.vector.LexicalIndex;
+import com.ling.lingkb.llm.vector.MetadataIndex;
+import com.ling.lingkb.llm.vector.ShardedIndex;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The text and link index of one workspace together with its chunk store, lexical and metadata index. The entry
+ * stays in the registry when the index is evicted, only the generations and the in memory stores are dropped. An
+ * entry left idle is retired and removed from the registry, a later request creates a new one.
+ * <p>
+ * Searches do not take the lock but register with {@link #acquire}, an evicted workspace keeps its generations and
+ * stores until the last search still running on them has released them.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/15
+ */
+class WorkspaceIndex {
+    final String workspace;
+    private final Path dataPath;
+    private final Path bakPath;
+    final Path linkPath;
+    /**
+     * Serializes loading, evicting, rebuilding, persisting and inserting, searches never take it
+     */
+    final ReentrantLock lock = new ReentrantLock();
+    final ShardedIndex text;
+    final ShardedIndex link = new ShardedIndex(1);
+    /**
+     * Node ids are handed out once on insert and never reused, so a deleted sentence cannot shift the others
+     */
+    final AtomicInteger nextNodeId = new AtomicInteger();
+    /**
+     * Bumped by every change of the indexes, cached search results of an older version are never served
+     */
+    final AtomicLong version = new AtomicLong();
+    /**
+     * Text and metadata of every sentence, search hits are hydrated from here instead of the database
+     */
+    volatile ChunkStore chunkStore = new ChunkStore();
+    /**
+     * BM25 postings of the sentence texts, empty unless hybrid search is enabled
+     */
+    volatile LexicalIndex lexicalIndex = new LexicalIndex();
+    /**
+     * Node bitmaps per document, source type and creation day for filtered searches
+     */
+    volatile MetadataIndex metadataIndex = new MetadataIndex();
+    /**
+     * How the graphs of the workspace are built and searched, replaced when the workspace is tuned
+     */
+    volatile GraphConfig graph;
+    volatile boolean loaded;
+    /**
+     * Searches running on the loaded generations and stores
+     */
+    private final AtomicInteger readers = new AtomicInteger();
+    /**
+     * Set while an evicted workspace still holds its generations and stores for searches running on them
+     */
+    private volatile boolean evicted;
+    /**
+     * Set once the entry is removed from the registry, it is never loaded again
+     */
+    volatile boolean retired;
+    private final LongAdder queries = new LongAdder();
+    private final long createTime = System.currentTimeMillis();
+    private volatile long lastAccessTime = createTime;
+
+    WorkspaceIndex(String workspace, Path dataPath, Path bakPath, Path linkPath, int shardCount) {
+        this.workspace = workspace;
+        this.dataPath = dataPath;
+        this.bakPath = bakPath;
+        this.linkPath = linkPath;
+        this.text = new ShardedIndex(shardCount);
+    }
+
+    /**
+     * A single shard keeps the plain data path, so the files of an unsharded index stay valid
+     */
+    Path dataPath(int shard) {
+        return shardPath(dataPath, shard);
+    }
+
+    Path bakPath(int shard) {
+        return shardPath(bakPath, shard);
+    }
+
+    private Path shardPath(Path path, int shard) {
+        if (text.count() == 1) {
+            return path;
+        }
+        return path.resolveSibling(path.getFileName() + ".shard-" + shard + "-of-" + text.count());
+    }
+
+    /**
+     * Register a search, the generations and stores stay in place until {@link #release}
+     *
+     * @return false if the workspace is not loaded and has to be opened first
+     */
+    boolean acquire() {
+        readers.incrementAndGet();
+        if (loaded) {
+            return true;
+        }
+        release();
+        return false;
+    }
+
+    void release() {
+        if (readers.decrementAndGet() == 0 && evicted) {
+            lock.lock();
+            try {
+                drop();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Called with the lock held once the generations and stores have been loaded
+     */
+    void markLoaded() {
+        evicted = false;
+        loaded = true;
+    }
+
+    /**
+     * Evict the workspace, its generations and stores are dropped now or by the last search running on them.
+     * Called with the lock held.
+     */
+    void unload() {
+        loaded = false;
+        evicted = true;
+        drop();
+    }
+
+    /**
+     * Retire the entry if it is unloaded and no search still holds its generations. Called with the lock held.
+     *
+     * @return whether the entry was retired
+     */
+    boolean retire() {
+        if (loaded || evicted || readers.get() > 0) {
+            return false;
+        }
+        retired = true;
+        return true;
+    }
+
+    private void drop() {
+        if (!evicted || loaded || readers.get() > 0) {
+            return;
+        }
+        evicted = false;
+        text.unload();
+        link.unload();
+        chunkStore = new ChunkStore();
+        lexicalIndex = new LexicalIndex();
+        metadataIndex = new MetadataIndex();
+    }
+
+    void touch() {
+        lastAccessTime = System.currentTimeMillis();
+    }
+
+    void countQuery() {
+        queries.increment();
+    }
+
+    long getLastAccessTime() {
+        return lastAccessTime;
+    }
+
+    long bytesUsed() {
+        if (!loaded) {
+            return 0;
+        }
+        return chunkStore.bytesUsed() + lexicalIndex.bytesUsed() + metadataIndex.bytesUsed() + text.bytesUsed() +
+                link.bytesUsed();
+    }
+
+    WorkspaceStats stats() {
+        double minutes = Math.max(1, System.currentTimeMillis() - createTime) / 60_000d;
+        return WorkspaceStats.builder().workspace(workspace).loaded(loaded).bytesUsed(bytesUsed())
+                .vectors(text.liveSize()).links(link.liveSize()).shards(text.count())
+                .diskResident(text.isDiskResident()).queries(queries.sum())
+                .queriesPerMinute(queries.sum() / minutes).lastAccessTime(lastAccessTime).build();
+    }
+}
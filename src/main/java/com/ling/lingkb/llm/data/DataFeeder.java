@@ -1,10 +1,16 @@
 package com.ling.lingkb.llm.data;
 
+import com.ling.lingkb.entity.IndexStats;
 import com.ling.lingkb.entity.LingDocument;
 import com.ling.lingkb.entity.LingDocumentLink;
 import com.ling.lingkb.entity.LingVector;
+import com.ling.lingkb.entity.SearchFilter;
+import com.ling.lingkb.entity.TuningReport;
+import com.ling.lingkb.entity.WorkspaceStats;
 import com.ling.lingkb.global.AsyncDao;
 import com.ling.lingkb.global.SoleMapper;
+import com.ling.lingkb.global.WorkspaceContext;
+import com.ling.lingkb.llm.client.VectorStoreClient;
 import com.ling.lingkb.llm.data.extractor.LanguageExtractor;
 import com.ling.lingkb.llm.data.parser.DocumentParserFactory;
 import com.ling.lingkb.llm.data.processor.TextProcessorFactory;
@@ -17,7 +23,6 @@ import java.util.stream.Collectors;
 import javax.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
@@ -31,23 +36,25 @@ import org.springframework.stereotype.Component;
 @Slf4j
 @Component
 public class DataFeeder {
-    @Value("${system.workspace}")
-    private String workspace;
-
     private DocumentParserFactory parserFactory;
     private TextProcessorFactory processorFactory;
     private LanguageExtractor languageExtractor;
     private AsyncDao asyncDao;
+    private VectorStoreClient vectorStoreClient;
+    private WorkspaceContext workspaceContext;
     @Resource
     private SoleMapper soleMapper;
 
     @Autowired
     public DataFeeder(DocumentParserFactory parserFactory, TextProcessorFactory processorFactory,
-                      LanguageExtractor languageExtractor, AsyncDao asyncDao) {
+                      LanguageExtractor languageExtractor, AsyncDao asyncDao, VectorStoreClient vectorStoreClient,
+                      WorkspaceContext workspaceContext) {
         this.parserFactory = parserFactory;
         this.processorFactory = processorFactory;
         this.languageExtractor = languageExtractor;
         this.asyncDao = asyncDao;
+        this.vectorStoreClient = vectorStoreClient;
+        this.workspaceContext = workspaceContext;
     }
 
     public String createDocId() {
@@ -56,6 +63,7 @@ public class DataFeeder {
 
     public void feed(String docId, Path filePath) throws Exception {
         LingDocument lingDocument = parserFactory.parse(filePath.toFile());
+        lingDocument.setSourceType(SearchFilter.SOURCE_UPLOAD);
         processAndExtract(lingDocument, docId);
         Files.deleteIfExists(filePath);
     }
@@ -63,7 +71,10 @@ public class DataFeeder {
     @Async
     public String feed(String url, String type) throws Exception {
         List<LingDocument> lingDocuments = parserFactory.parseUrl(url, type);
-        lingDocuments.forEach(lingDocument -> processAndExtract(lingDocument, createDocId()));
+        lingDocuments.forEach(lingDocument -> {
+            lingDocument.setSourceType(type);
+            processAndExtract(lingDocument, createDocId());
+        });
         return lingDocuments.stream().map(LingDocument::getDocId).collect(Collectors.joining(","));
     }
 
@@ -72,6 +83,7 @@ public class DataFeeder {
             if (!lingDocument.getText().trim().isEmpty()) {
                 lingDocument = processorFactory.process(lingDocument);
                 lingDocument = languageExtractor.doExtract(lingDocument);
+                String workspace = workspaceContext.get();
                 lingDocument.setDocId(docId);
                 lingDocument.setWorkspace(workspace);
                 List<LingDocumentLink> links = lingDocument.getLinks();
@@ -90,24 +102,43 @@ public class DataFeeder {
     }
 
     public List<LingDocument> getDocIdList() {
-        return soleMapper.queryDocument(workspace);
+        return soleMapper.queryDocument(workspaceContext.get());
     }
 
     public LingDocument getDocument(String docId) {
-        LingDocument lingDocument = soleMapper.queryDocumentByDocId(docId);
-        LingVector lingVector = soleMapper.queryVectorByDocId(docId);
-        lingDocument.setPersisted(lingVector.isPersisted());
+        String workspace = workspaceContext.get();
+        LingDocument lingDocument = soleMapper.queryDocumentByDocId(workspace, docId);
+        LingVector lingVector = soleMapper.queryVectorByDocId(workspace, docId);
+        if (lingDocument != null && lingVector != null) {
+            lingDocument.setPersisted(lingVector.isPersisted());
+        }
         return lingDocument;
     }
 
     public List<LingVector> getVectors(String docId) {
-        return soleMapper.queryVectorsByDocId(docId);
+        return soleMapper.queryVectorsByDocId(workspaceContext.get(), docId);
     }
 
     public void removeNode(int nodeId) {
         asyncDao.removeNode(nodeId);
     }
 
+    public boolean removeDocument(String docId) {
+        return vectorStoreClient.removeDocument(workspaceContext.get(), docId);
+    }
+
+    public List<WorkspaceStats> getWorkspaceStats() {
+        return vectorStoreClient.stats();
+    }
+
+    public List<IndexStats> getIndexStats() {
+        return vectorStoreClient.indexStats(workspaceContext.get());
+    }
+
+    public TuningReport tune() {
+        return vectorStoreClient.tune(workspaceContext.get());
+    }
+
     public void updateNode(String docId, int nodeId, String txt) {
         asyncDao.removeNode(nodeId);
         asyncDao.feedInChunk(docId, Collections.singletonList(txt));
@@ -0,0 +1,120 @@
+package com.ling.lingkb.llm.vector;
+
+import com.ling.lingkb.entity.SearchHit;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Keeps the text and metadata of every sentence in memory so search hits are hydrated without a database query.
+ * <p>
+ * Texts are appended to one UTF-8 byte arena, the per node columns are plain int arrays indexed by the stable
+ * node id and doc ids are interned into a dictionary. Removing a node only clears its slot, the bytes are given
+ * back when the store is reloaded on the next rebuild.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/12
+ */
+public class ChunkStore {
+    private static final int ABSENT = -1;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private byte[] arena = new byte[1 << 16];
+    private int arenaSize;
+    private int[] offsets = new int[0];
+    private int[] lengths = new int[0];
+    private int[] docIndexes = new int[0];
+    private int[] positions = new int[0];
+    private final List<String> docIds = new ArrayList<>();
+    private final Map<String, Integer> docIndexById = new HashMap<>();
+    private int[] docChunkCounts = new int[16];
+
+    /**
+     * Store a sentence, sentences of a document are expected in their original order
+     */
+    public void put(int nodeId, String docId, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        lock.writeLock().lock();
+        try {
+            ensureNode(nodeId);
+            if (arenaSize + bytes.length > arena.length) {
+                arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + bytes.length));
+            }
+            System.arraycopy(bytes, 0, arena, arenaSize, bytes.length);
+            int docIndex = docIndexById.computeIfAbsent(docId, id -> {
+                docIds.add(id);
+                return docIds.size() - 1;
+            });
+            if (docIndex >= docChunkCounts.length) {
+                docChunkCounts = Arrays.copyOf(docChunkCounts, docChunkCounts.length * 2);
+            }
+            offsets[nodeId] = arenaSize;
+            lengths[nodeId] = bytes.length;
+            docIndexes[nodeId] = docIndex;
+            positions[nodeId] = docChunkCounts[docIndex]++;
+            arenaSize += bytes.length;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int nodeId) {
+        lock.writeLock().lock();
+        try {
+            if (nodeId < lengths.length) {
+                lengths[nodeId] = ABSENT;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The hit of the node with the score it was found with, null if the node is not stored
+     */
+    public SearchHit hit(int nodeId, float score) {
+        lock.readLock().lock();
+        try {
+            if (!contains(nodeId)) {
+                return null;
+            }
+            return SearchHit.builder().nodeId(nodeId).docId(docIds.get(docIndexes[nodeId]))
+                    .position(positions[nodeId]).score(score)
+                    .text(new String(arena, offsets[nodeId], lengths[nodeId], StandardCharsets.UTF_8)).build();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long bytesUsed() {
+        lock.readLock().lock();
+        try {
+            return arena.length + 16L * offsets.length;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean contains(int nodeId) {
+        return nodeId >= 0 && nodeId < lengths.length && lengths[nodeId] != ABSENT;
+    }
+
+    private void ensureNode(int nodeId) {
+        if (nodeId < offsets.length) {
+            return;
+        }
+        int length = offsets.length;
+        int newLength = Math.max(Math.max(length * 2, 16), nodeId + 1);
+        offsets = Arrays.copyOf(offsets, newLength);
+        lengths = Arrays.copyOf(lengths, newLength);
+        Arrays.fill(lengths, length, newLength, ABSENT);
+        docIndexes = Arrays.copyOf(docIndexes, newLength);
+        positions = Arrays.copyOf(positions, newLength);
+    }
+}
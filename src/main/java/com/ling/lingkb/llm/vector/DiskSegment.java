@@ -0,0 +1,228 @@
+package com.ling.lingkb.llm.vector;
+
+import static io.github.jbellis.jvector.vector.VectorSimilarityFunction.DOT_PRODUCT;
+import io.github.jbellis.jvector.disk.RandomAccessReader;
+import io.github.jbellis.jvector.disk.ReaderSupplier;
+import io.github.jbellis.jvector.disk.ReaderSupplierFactory;
+import io.github.jbellis.jvector.graph.GraphIndex;
+import io.github.jbellis.jvector.graph.GraphIndexBuilder;
+import io.github.jbellis.jvector.graph.GraphSearcher;
+import io.github.jbellis.jvector.graph.OnHeapGraphIndex;
+import io.github.jbellis.jvector.graph.RandomAccessVectorValues;
+import io.github.jbellis.jvector.graph.SearchResult;
+import io.github.jbellis.jvector.graph.disk.OnDiskGraphIndex;
+import io.github.jbellis.jvector.graph.similarity.BuildScoreProvider;
+import io.github.jbellis.jvector.graph.similarity.DefaultSearchScoreProvider;
+import io.github.jbellis.jvector.graph.similarity.ScoreFunction;
+import io.github.jbellis.jvector.quantization.PQVectors;
+import io.github.jbellis.jvector.quantization.ProductQuantization;
+import io.github.jbellis.jvector.util.Bits;
+import io.github.jbellis.jvector.util.PhysicalCoreExecutor;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ObjIntConsumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * An immutable segment of a disk resident generation. The graph and the full precision vectors stay in the memory
+ * mapped index file, only the product quantized codes are kept on heap. Searches traverse the graph scoring with
+ * the codes and rerank the best candidates with the exact vectors read from the file. The graph may be built over
+ * a prefix of the vectors, which only affects its neighbour choice, the file keeps the full vectors.
+ * <p>
+ * A segment is shared by the generations published after it was written, it is closed and its files are removed
+ * when the last of them releases it.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/14
+ */
+@Slf4j
+public class DiskSegment implements Closeable {
+    static final String PQ_SUFFIX = ".pq";
+    private static final int CLUSTER_COUNT = 256;
+    /**
+     * Fewest candidates ranked by their codes and rescored, codes of 8 dimensions per subspace misorder the true
+     * top 10 beyond the 40 candidates of the default overquery
+     */
+    private static final int MIN_RERANK = 100;
+
+    private final Path path;
+    private final ReaderSupplier readerSupplier;
+    private final OnDiskGraphIndex graph;
+    private final PQVectors codes;
+    private final AtomicInteger refCount = new AtomicInteger();
+    /**
+     * Set once a manifest lists the segment, its files are then kept when the last generation releases it and
+     * removed by {@link IndexManifest#removeSegments} once no manifest lists them any more
+     */
+    private volatile boolean listed;
+    /**
+     * Searchers reused by the queries, the graph never changes so their views are kept across queries
+     */
+    private final SearcherPool<GraphSearcher> searchers;
+
+    private DiskSegment(Path path, ReaderSupplier readerSupplier, PQVectors codes) throws IOException {
+        this.path = path;
+        this.readerSupplier = readerSupplier;
+        this.graph = OnDiskGraphIndex.load(readerSupplier);
+        this.codes = codes;
+        this.searchers = new SearcherPool<>(() -> new GraphSearcher(graph));
+    }
+
+    /**
+     * Build the graph over the mapped vectors, write it with inline vectors to {@code path} and quantize the
+     * vectors to one byte per {@code subspaces} dimensions.
+     *
+     * @param graph the build parameters and the leading dimensions the graph is built over
+     */
+    static DiskSegment build(Path path, MappedVectorValues vectors, int subspaces, GraphConfig graph)
+            throws IOException {
+        int indexDimension = graph.getIndexDimension();
+        RandomAccessVectorValues graphVectors = PrefixVectorValues.truncates(indexDimension, vectors.dimension()) ?
+                new PrefixVectorValues(vectors, indexDimension) : vectors;
+        BuildScoreProvider bsp = BuildScoreProvider.randomAccessScoreProvider(graphVectors, DOT_PRODUCT);
+        try (GraphIndexBuilder builder = HnswIndex.builder(bsp, graphVectors.dimension(), graph)) {
+            OnHeapGraphIndex heapGraph = builder.build(graphVectors);
+            OnDiskGraphIndex.write(heapGraph, vectors, path);
+        }
+        ProductQuantization pq = ProductQuantization
+                .compute(vectors, Math.min(subspaces, vectors.dimension()), Math.min(CLUSTER_COUNT, vectors.size()),
+                        false);
+        PQVectors codes = (PQVectors) pq.encodeAll(vectors, PhysicalCoreExecutor.pool());
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(IndexManifest.sibling(path, PQ_SUFFIX))))) {
+            codes.write(out);
+        }
+        log.info("Built segment {} with {} vectors, {} bytes of codes per vector", path,
+                vectors.size(), pq.getSubspaceCount());
+        return new DiskSegment(path, ReaderSupplierFactory.open(path), codes);
+    }
+
+    static DiskSegment open(Path path) throws IOException {
+        PQVectors codes;
+        try (ReaderSupplier rs = ReaderSupplierFactory.open(IndexManifest.sibling(path, PQ_SUFFIX));
+             RandomAccessReader in = rs.get()) {
+            codes = PQVectors.load(in);
+        }
+        DiskSegment segment = new DiskSegment(path, ReaderSupplierFactory.open(path), codes);
+        segment.listed = true;
+        return segment;
+    }
+
+    /**
+     * @param rerankK how many candidates found with the codes are rescored with the exact vectors, at least
+     *                {@value #MIN_RERANK}
+     */
+    SearchResult search(VectorFloat<?> query, int topK, int rerankK, Bits acceptOrds) {
+        GraphSearcher searcher = searchers.borrow();
+        try {
+            ScoreFunction.ApproximateScoreFunction asf = codes.precomputedScoreFunctionFor(query, DOT_PRODUCT);
+            ScoreFunction.ExactScoreFunction reranker =
+                    ((OnDiskGraphIndex.View) searcher.getView()).rerankerFor(query, DOT_PRODUCT);
+            return searcher.search(new DefaultSearchScoreProvider(asf, reranker), topK,
+                    Math.max(MIN_RERANK, Math.max(topK, rerankK)), 0f, 0f, acceptOrds);
+        } finally {
+            searchers.giveBack(searcher);
+        }
+    }
+
+    /**
+     * The exact score of the vector at {@code ordinal}, read from the mapped file
+     */
+    float score(VectorFloat<?> query, int ordinal) {
+        GraphSearcher searcher = searchers.borrow();
+        try {
+            return DOT_PRODUCT.compare(query, ((OnDiskGraphIndex.View) searcher.getView()).getVector(ordinal));
+        } finally {
+            searchers.giveBack(searcher);
+        }
+    }
+
+    /**
+     * Hand every vector of the segment to {@code consumer} in ordinal order
+     */
+    void forEachVector(ObjIntConsumer<VectorFloat<?>> consumer) throws IOException {
+        try (OnDiskGraphIndex.View view = graph.getView()) {
+            for (int i = 0; i < graph.size(); i++) {
+                consumer.accept(view.getVector(i), i);
+            }
+        }
+    }
+
+    void list() {
+        listed = true;
+    }
+
+    void retain() {
+        refCount.incrementAndGet();
+    }
+
+    /**
+     * @param retainFiles whether the files stay on disk when this was the last reference
+     */
+    void release(boolean retainFiles) {
+        if (refCount.decrementAndGet() == 0) {
+            if (retainFiles || listed) {
+                unmap();
+            } else {
+                close();
+            }
+        }
+    }
+
+    int size() {
+        return graph.size();
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    long codeBytes() {
+        return codes.ramBytesUsed();
+    }
+
+    GraphIndex graph() {
+        return graph;
+    }
+
+    /**
+     * The size of the index file and the codes file
+     */
+    long fileBytes() throws IOException {
+        return Files.size(path) + Files.size(IndexManifest.sibling(path, PQ_SUFFIX));
+    }
+
+    /**
+     * Close the mapping but keep the files, the segment is opened again when its workspace is loaded
+     */
+    void unmap() {
+        searchers.close();
+        try {
+            graph.close();
+            readerSupplier.close();
+        } catch (IOException e) {
+            log.warn("Failed to close disk segment {}", path, e);
+        }
+    }
+
+    /**
+     * Close the mapping and remove the files, called once no generation uses this segment and no manifest lists it
+     */
+    @Override
+    public void close() {
+        unmap();
+        try {
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(IndexManifest.sibling(path, PQ_SUFFIX));
+        } catch (IOException e) {
+            log.warn("Failed to remove disk segment {}", path, e);
+        }
+    }
+}
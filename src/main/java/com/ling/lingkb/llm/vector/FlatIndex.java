@@ -0,0 +1,180 @@
+package com.ling.lingkb.llm.vector;
+
+import static io.github.jbellis.jvector.vector.VectorSimilarityFunction.DOT_PRODUCT;
+import io.github.jbellis.jvector.graph.SearchResult;
+import io.github.jbellis.jvector.util.Bits;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Exact search by scoring the query against every vector. The scores are computed by the vectorized similarity
+ * functions of jvector, so for a few tens of thousands of vectors a scan is about as fast as a graph search and
+ * saves the whole build.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/18
+ */
+class FlatIndex implements VectorIndex {
+    private final MutableVectorValues vectors;
+    /**
+     * Ordinals below this are indexed, those reserved by an insert in progress are not searched yet
+     */
+    private volatile int size;
+
+    FlatIndex(MutableVectorValues vectors) {
+        this.vectors = vectors;
+    }
+
+    static FlatIndex load(Path path, MutableVectorValues vectors, int size) throws IOException {
+        readVectors(path, vectors, size);
+        FlatIndex index = new FlatIndex(vectors);
+        index.build();
+        return index;
+    }
+
+    @Override
+    public VectorIndexType type() {
+        return VectorIndexType.FLAT;
+    }
+
+    @Override
+    public void build() {
+        size = vectors.size();
+    }
+
+    @Override
+    public void add(int ordinal) {
+        size = ordinal + 1;
+    }
+
+    @Override
+    public void delete(int ordinal) {
+        // deleted ordinals are skipped through the accept filter
+    }
+
+    @Override
+    public SearchResult search(VectorFloat<?> query, int topK, Bits acceptOrds) {
+        // a view per query, its scratch vector is small next to the scan
+        MutableVectorValues view = vectors.copy();
+        int count = size;
+        TopK top = new TopK(topK);
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            if (acceptOrds.get(ordinal)) {
+                top.offer(ordinal, DOT_PRODUCT.compare(query, view.getVector(ordinal)));
+            }
+        }
+        return top.result(count);
+    }
+
+    @Override
+    public void write(Path path) throws IOException {
+        writeVectors(path, vectors, size);
+    }
+
+    @Override
+    public long bytesUsed() {
+        return 0;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Write the first {@code size} vectors as little endian floats
+     */
+    static void writeVectors(Path path, MutableVectorValues vectors, int size) throws IOException {
+        MutableVectorValues view = vectors.copy();
+        try (MappedVectorValues.Writer writer = new MappedVectorValues.Writer(path, view.dimension())) {
+            for (int i = 0; i < size; i++) {
+                writer.add(view.getVector(i));
+            }
+        }
+    }
+
+    static void readVectors(Path path, MutableVectorValues vectors, int size) throws IOException {
+        MappedVectorValues mapped = MappedVectorValues.open(path, vectors.dimension());
+        if (mapped.size() != size) {
+            throw new IOException("Index " + path + " holds " + mapped.size() + " vectors, expected " + size);
+        }
+        for (int i = 0; i < size; i++) {
+            vectors.add(mapped.getVector(i));
+        }
+    }
+
+    /**
+     * The best scores seen so far in a min heap, the worst of them at the root
+     */
+    static class TopK {
+        private final int[] nodes;
+        private final float[] scores;
+        private int count;
+
+        TopK(int k) {
+            nodes = new int[Math.max(k, 1)];
+            scores = new float[Math.max(k, 1)];
+        }
+
+        void offer(int node, float score) {
+            if (count < nodes.length) {
+                nodes[count] = node;
+                scores[count] = score;
+                siftUp(count++);
+            } else if (score > scores[0]) {
+                nodes[0] = node;
+                scores[0] = score;
+                siftDown(0);
+            }
+        }
+
+        /**
+         * The collected nodes in descending score order, {@code visited} is reported as the visited count
+         */
+        SearchResult result(int visited) {
+            SearchResult.NodeScore[] result = new SearchResult.NodeScore[count];
+            float worst = count == 0 ? Float.POSITIVE_INFINITY : scores[0];
+            for (int i = count - 1; i >= 0; i--) {
+                result[i] = new SearchResult.NodeScore(nodes[0], scores[0]);
+                count--;
+                nodes[0] = nodes[count];
+                scores[0] = scores[count];
+                siftDown(0);
+            }
+            return new SearchResult(result, visited, visited, visited, 0, worst);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0 && scores[(i - 1) / 2] > scores[i]) {
+                swap(i, (i - 1) / 2);
+                i = (i - 1) / 2;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int smallest = i;
+                for (int child = 2 * i + 1; child <= 2 * i + 2 && child < count; child++) {
+                    if (scores[child] < scores[smallest]) {
+                        smallest = child;
+                    }
+                }
+                if (smallest == i) {
+                    return;
+                }
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int node = nodes[a];
+            nodes[a] = nodes[b];
+            nodes[b] = node;
+            float score = scores[a];
+            scores[a] = scores[b];
+            scores[b] = score;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.ling.lingkb.llm.vector;
+
+import io.github.jbellis.jvector.graph.GraphIndex;
+import io.github.jbellis.jvector.graph.NodesIterator;
+import io.github.jbellis.jvector.util.Bits;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Degree distribution and reachability of the base layer of the graphs of a generation. Tombstoned nodes stay in
+ * a graph and still route searches, so they are walked through but not counted.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/19
+ */
+class GraphCensus {
+    private int[] histogram = new int[0];
+    private long degrees;
+    private int nodes;
+    private int unreachable;
+
+    /**
+     * Count the live nodes of the graph by degree and those a search entering at its entry node never reaches
+     *
+     * @param live the live nodes in the ordinals of the graph
+     */
+    void add(GraphIndex graph, Bits live) throws IOException {
+        try (GraphIndex.View view = graph.getView()) {
+            int bound = view.getIdUpperBound();
+            BitSet reached = reach(view, bound);
+            NodesIterator it = graph.getNodes(0);
+            while (it.hasNext()) {
+                int node = it.nextInt();
+                // nodes inserted after the view was taken are left for the next census
+                if (node >= bound || !live.get(node)) {
+                    continue;
+                }
+                int degree = 0;
+                // the neighbours of a heap graph are filtered while iterating and do not know their count
+                for (NodesIterator neighbors = view.getNeighborsIterator(0, node); neighbors.hasNext(); ) {
+                    neighbors.nextInt();
+                    degree++;
+                }
+                if (degree >= histogram.length) {
+                    histogram = Arrays.copyOf(histogram, degree + 1);
+                }
+                histogram[degree]++;
+                degrees += degree;
+                nodes++;
+                if (!reached.get(node)) {
+                    unreachable++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Breadth first from the entry node over the base layer
+     */
+    private static BitSet reach(GraphIndex.View view, int bound) {
+        BitSet reached = new BitSet(bound);
+        GraphIndex.NodeAtLevel entry = view.entryNode();
+        if (entry == null) {
+            return reached;
+        }
+        int[] queue = new int[bound];
+        int head = 0;
+        int tail = 0;
+        reached.set(entry.node);
+        queue[tail++] = entry.node;
+        while (head < tail) {
+            NodesIterator neighbors = view.getNeighborsIterator(0, queue[head++]);
+            while (neighbors.hasNext()) {
+                int neighbor = neighbors.nextInt();
+                if (neighbor < bound && !reached.get(neighbor)) {
+                    reached.set(neighbor);
+                    queue[tail++] = neighbor;
+                }
+            }
+        }
+        return reached;
+    }
+
+    int[] histogram() {
+        return histogram;
+    }
+
+    double meanDegree() {
+        return nodes == 0 ? 0 : (double) degrees / nodes;
+    }
+
+    int unreachable() {
+        return unreachable;
+    }
+}
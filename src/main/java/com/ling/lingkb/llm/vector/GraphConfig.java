@@ -0,0 +1,91 @@
+package com.ling.lingkb.llm.vector;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * How the graphs of a workspace are built and searched. The defaults are the jvector recommendations, a workspace
+ * may replace the build and search parameters with those chosen by {@link GraphTuner}, kept in a file next to its
+ * index.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/19
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class GraphConfig {
+    static final String TUNING_SUFFIX = ".tuning";
+
+    /**
+     * The leading dimensions the graphs are built over, 0 for the full vectors. Set by configuration only, it
+     * decides whether the index files can be opened.
+     */
+    private int indexDimension;
+    @Builder.Default
+    private int maxDegree = 16;
+    @Builder.Default
+    private int beamWidth = 100;
+    @Builder.Default
+    private float neighborOverflow = 1.2f;
+    @Builder.Default
+    private float alpha = 1.2f;
+    /**
+     * Candidates searched per result: the beam of a graph search and the rerank depth of product quantized or
+     * truncated vectors
+     */
+    @Builder.Default
+    private int overquery = 4;
+
+    /**
+     * The tuned parameters written next to the index at {@code path} on top of {@code defaults}, the defaults if
+     * the workspace was never tuned
+     */
+    public static GraphConfig read(Path path, GraphConfig defaults) throws IOException {
+        Path tuningPath = IndexManifest.sibling(path, TUNING_SUFFIX);
+        if (Files.notExists(tuningPath)) {
+            return defaults;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(tuningPath)) {
+            properties.load(in);
+        }
+        return defaults.toBuilder()
+                .maxDegree(Integer.parseInt(properties.getProperty("maxDegree", String.valueOf(defaults.maxDegree))))
+                .beamWidth(Integer.parseInt(properties.getProperty("beamWidth", String.valueOf(defaults.beamWidth))))
+                .neighborOverflow(Float.parseFloat(
+                        properties.getProperty("neighborOverflow", String.valueOf(defaults.neighborOverflow))))
+                .alpha(Float.parseFloat(properties.getProperty("alpha", String.valueOf(defaults.alpha))))
+                .overquery(Integer.parseInt(properties.getProperty("overquery", String.valueOf(defaults.overquery))))
+                .build();
+    }
+
+    /**
+     * Keep the tuned parameters next to the index at {@code path}, the index dimension stays with the configuration
+     */
+    public void write(Path path) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("maxDegree", String.valueOf(maxDegree));
+        properties.setProperty("beamWidth", String.valueOf(beamWidth));
+        properties.setProperty("neighborOverflow", String.valueOf(neighborOverflow));
+        properties.setProperty("alpha", String.valueOf(alpha));
+        properties.setProperty("overquery", String.valueOf(overquery));
+        Path tuningPath = IndexManifest.sibling(path, TUNING_SUFFIX);
+        Path tmpPath = IndexManifest.sibling(path, TUNING_SUFFIX + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmpPath)) {
+            properties.store(out, "LingKB graph tuning");
+        }
+        Files.move(tmpPath, tuningPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,165 @@
+package com.ling.lingkb.llm.vector;
+
+import com.ling.lingkb.entity.TuningPoint;
+import com.ling.lingkb.entity.TuningReport;
+import io.github.jbellis.jvector.graph.SearchResult;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sweeps the build and search parameters of the graph over a sample of a workspace. Every combination of degree,
+ * beam width and alpha is built once and searched with every overquery, recall is measured against the exact
+ * top k of held-out queries. The chosen point is the most accurate one on the recall and p99 latency Pareto front
+ * that meets the latency objective.
+ * <p>
+ * Latency is measured single threaded on the sample, a full workspace is slower by the log of its size ratio.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/19
+ */
+@Slf4j
+public class GraphTuner {
+    private static final int[] MAX_DEGREES = {8, 16, 32};
+    private static final int[] BEAM_WIDTHS = {50, 100, 200};
+    private static final float[] ALPHAS = {1.0f, 1.2f};
+    private static final int[] OVERQUERIES = {1, 2, 4, 8, 16};
+
+    private final float[][] base;
+    private final float[][] queries;
+    private final int topK;
+    /**
+     * The ordinals of the exact top k of every query
+     */
+    private final int[][] truth;
+
+    /**
+     * @param base    the vectors the graphs are built over
+     * @param queries held-out vectors of the same workspace, none of them is part of {@code base}
+     */
+    public GraphTuner(float[][] base, float[][] queries, int topK) {
+        this.base = base;
+        this.queries = queries;
+        this.topK = topK;
+        this.truth = IntStream.range(0, queries.length).parallel().mapToObj(this::exactTopK).toArray(int[][]::new);
+    }
+
+    private int[] exactTopK(int query) {
+        FlatIndex.TopK top = new FlatIndex.TopK(topK);
+        for (int i = 0; i < base.length; i++) {
+            float score = 0;
+            for (int j = 0; j < base[i].length; j++) {
+                score += queries[query][j] * base[i][j];
+            }
+            top.offer(i, score);
+        }
+        return Arrays.stream(top.result(base.length).getNodes()).mapToInt(nodeScore -> nodeScore.node).toArray();
+    }
+
+    /**
+     * @param current          the index dimension and neighbor overflow are kept from it
+     * @param latencySloMicros the p99 latency a point has to stay within to be chosen
+     */
+    public TuningReport tune(GraphConfig current, long latencySloMicros) {
+        List<TuningPoint> points = new ArrayList<>();
+        for (int maxDegree : MAX_DEGREES) {
+            for (int beamWidth : BEAM_WIDTHS) {
+                for (float alpha : ALPHAS) {
+                    GraphConfig graph = current.toBuilder().maxDegree(maxDegree).beamWidth(beamWidth).alpha(alpha)
+                            .build();
+                    points.addAll(sweep(graph));
+                }
+            }
+        }
+        TuningPoint chosen = choose(points, latencySloMicros);
+        log.info("Tuned graph over {} vectors: degree {}, beam width {}, alpha {}, overquery {} at recall {} and " +
+                        "p99 {}us", base.length, chosen.getMaxDegree(), chosen.getBeamWidth(), chosen.getAlpha(),
+                chosen.getOverquery(), chosen.getRecall(), chosen.getP99Micros());
+        return TuningReport.builder().sampleSize(base.length).queries(queries.length).topK(topK)
+                .latencySloMicros(latencySloMicros).points(points).chosen(chosen).build();
+    }
+
+    /**
+     * Build one graph and search it with every overquery
+     */
+    private List<TuningPoint> sweep(GraphConfig graph) {
+        long start = System.nanoTime();
+        IndexGeneration generation = IndexGeneration.create(base[0].length, graph, VectorIndexType.HNSW);
+        try {
+            for (int i = 0; i < base.length; i++) {
+                generation.append(base[i], NodeType.TEXT, i);
+            }
+            generation.buildGraph();
+            long buildMillis = (System.nanoTime() - start) / 1_000_000;
+            List<TuningPoint> points = new ArrayList<>();
+            for (int overquery : OVERQUERIES) {
+                // the first pass warms up the searcher and the compiled code
+                search(generation, overquery, new long[queries.length]);
+                long[] latencies = new long[queries.length];
+                double recall = search(generation, overquery, latencies);
+                Arrays.sort(latencies);
+                points.add(TuningPoint.builder().maxDegree(graph.getMaxDegree()).beamWidth(graph.getBeamWidth())
+                        .alpha(graph.getAlpha()).overquery(overquery).recall(recall)
+                        .p50Micros(percentile(latencies, 0.5) / 1000).p99Micros(percentile(latencies, 0.99) / 1000)
+                        .buildMillis(buildMillis).build());
+            }
+            return points;
+        } finally {
+            generation.release();
+        }
+    }
+
+    /**
+     * Search every query, recording its latency in nanoseconds
+     *
+     * @return the recall at k over all queries
+     */
+    private double search(IndexGeneration generation, int overquery, long[] latencies) {
+        int found = 0;
+        for (int q = 0; q < queries.length; q++) {
+            long start = System.nanoTime();
+            SearchResult result = generation.search(queries[q], topK, topK * overquery);
+            latencies[q] = System.nanoTime() - start;
+            for (SearchResult.NodeScore nodeScore : result.getNodes()) {
+                for (int node : truth[q]) {
+                    if (generation.id(nodeScore.node) == node) {
+                        found++;
+                        break;
+                    }
+                }
+            }
+        }
+        return (double) found / Math.max(1, Arrays.stream(truth).mapToInt(nodes -> nodes.length).sum());
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+    /**
+     * Mark the Pareto front of recall and p99 latency and pick the most accurate point of it within the latency
+     * objective, the fastest if none is
+     */
+    static TuningPoint choose(List<TuningPoint> points, long latencySloMicros) {
+        List<TuningPoint> byLatency = new ArrayList<>(points);
+        byLatency.sort(Comparator.comparingLong(TuningPoint::getP99Micros)
+                .thenComparing(Comparator.comparingDouble(TuningPoint::getRecall).reversed())
+                .thenComparingLong(TuningPoint::getBuildMillis));
+        double bestRecall = -1;
+        TuningPoint chosen = null;
+        for (TuningPoint point : byLatency) {
+            if (point.getRecall() > bestRecall) {
+                point.setPareto(true);
+                bestRecall = point.getRecall();
+                if (chosen == null || point.getP99Micros() <= latencySloMicros) {
+                    chosen = point;
+                }
+            }
+        }
+        return chosen;
+    }
+}
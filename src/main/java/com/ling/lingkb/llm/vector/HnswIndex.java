@@ -0,0 +1,216 @@
+package com.ling.lingkb.llm.vector;
+
+import static io.github.jbellis.jvector.vector.VectorSimilarityFunction.DOT_PRODUCT;
+import io.github.jbellis.jvector.disk.RandomAccessReader;
+import io.github.jbellis.jvector.disk.ReaderSupplier;
+import io.github.jbellis.jvector.disk.ReaderSupplierFactory;
+import io.github.jbellis.jvector.graph.GraphIndex;
+import io.github.jbellis.jvector.graph.GraphIndexBuilder;
+import io.github.jbellis.jvector.graph.GraphSearcher;
+import io.github.jbellis.jvector.graph.SearchResult;
+import io.github.jbellis.jvector.graph.disk.OnDiskGraphIndex;
+import io.github.jbellis.jvector.graph.similarity.BuildScoreProvider;
+import io.github.jbellis.jvector.graph.similarity.DefaultSearchScoreProvider;
+import io.github.jbellis.jvector.util.Bits;
+import io.github.jbellis.jvector.vector.VectorizationProvider;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import io.github.jbellis.jvector.vector.types.VectorTypeSupport;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The jvector graph over the heap vectors. It is written as an on-disk graph with inline vectors, from which the
+ * vectors are read back, and the heap graph itself so it is loaded without a rebuild.
+ * <p>
+ * With an index dimension below the vector dimension the graph is built and traversed over the unit length
+ * prefixes of the vectors, kept next to them, and the candidates are reranked with the full vectors. The written
+ * file still holds the full vectors, the prefixes are derived again on load.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/18
+ */
+@Slf4j
+class HnswIndex implements VectorIndex {
+    private static final VectorTypeSupport VTS = VectorizationProvider.getInstance().getVectorTypeSupport();
+
+    private final MutableVectorValues vectors;
+    /**
+     * The vectors the graph is built over, the same values as {@link #vectors} unless they are truncated
+     */
+    private final MutableVectorValues prefixes;
+    private final GraphIndexBuilder builder;
+    /**
+     * Searchers reused by the queries, their visited sets and candidate heaps are cleared by every query
+     */
+    private final SearcherPool<Scratch> searchers;
+
+    HnswIndex(MutableVectorValues vectors, GraphConfig graph) {
+        this.vectors = vectors;
+        this.prefixes = PrefixVectorValues.truncates(graph.getIndexDimension(), vectors.dimension()) ?
+                new MutableVectorValues(graph.getIndexDimension()) : vectors;
+        this.builder =
+                builder(BuildScoreProvider.randomAccessScoreProvider(prefixes, DOT_PRODUCT), prefixes.dimension(),
+                        graph);
+        this.searchers = new SearcherPool<>(() -> new Scratch(new GraphSearcher(builder.getGraph()), vectors.copy(),
+                prefixes.copy()));
+    }
+
+    static GraphIndexBuilder builder(BuildScoreProvider bsp, int dimension, GraphConfig graph) {
+        return new GraphIndexBuilder(bsp, dimension, graph.getMaxDegree(), graph.getBeamWidth(),
+                graph.getNeighborOverflow(), graph.getAlpha(), false, true);
+    }
+
+    static HnswIndex load(Path path, MutableVectorValues vectors, int size, GraphConfig graph) throws IOException {
+        try (ReaderSupplier rs = ReaderSupplierFactory.open(path); OnDiskGraphIndex diskIndex = OnDiskGraphIndex
+                .load(rs); OnDiskGraphIndex.View view = diskIndex.getView()) {
+            if (diskIndex.size() != size || diskIndex.getDimension() != vectors.dimension()) {
+                throw new IOException("Index " + path + " does not match its manifest");
+            }
+            for (int i = 0; i < size; i++) {
+                vectors.add(view.getVector(i));
+            }
+        }
+        HnswIndex index = new HnswIndex(vectors, graph);
+        index.truncate();
+        try (ReaderSupplier rs = ReaderSupplierFactory
+                .open(IndexManifest.sibling(path, IndexManifest.GRAPH_SUFFIX)); RandomAccessReader in = rs.get()) {
+            index.builder.load(in);
+        } catch (IOException | RuntimeException e) {
+            index.close();
+            throw new IOException("Failed to load graph of " + path, e);
+        }
+        return index;
+    }
+
+    @Override
+    public VectorIndexType type() {
+        return VectorIndexType.HNSW;
+    }
+
+    @Override
+    public void build() {
+        truncate();
+        if (prefixes.size() > 0) {
+            builder.build(prefixes);
+        }
+    }
+
+    @Override
+    public void add(int ordinal) {
+        truncate();
+        builder.addGraphNode(ordinal, prefixes.copy().getVector(ordinal));
+    }
+
+    /**
+     * Add the prefixes of the vectors appended since the last call
+     */
+    private void truncate() {
+        if (prefixes == vectors) {
+            return;
+        }
+        MutableVectorValues view = vectors.copy();
+        for (int i = prefixes.size(); i < view.size(); i++) {
+            prefixes.add(PrefixVectorValues.prefix(view.getVector(i), prefixes.dimension()));
+        }
+    }
+
+    @Override
+    public void delete(int ordinal) {
+        // removing nodes from the graph leaves holes in the ordinals, they are skipped through the accept filter
+    }
+
+    @Override
+    public SearchResult search(VectorFloat<?> query, int topK, Bits acceptOrds) {
+        return search(query, topK, topK, acceptOrds);
+    }
+
+    @Override
+    public SearchResult search(VectorFloat<?> query, int topK, int rerankK, Bits acceptOrds) {
+        Scratch scratch = searchers.borrow();
+        try {
+            return search(scratch, query, topK, rerankK, acceptOrds);
+        } finally {
+            searchers.giveBack(scratch);
+        }
+    }
+
+    private SearchResult search(Scratch scratch, VectorFloat<?> query, int topK, int rerankK, Bits acceptOrds) {
+        GraphSearcher searcher = scratch.searcher;
+        // a view only sees the nodes completed before it was taken
+        searcher.setView(builder.getGraph().getView());
+        if (prefixes == vectors) {
+            // the extra candidates only widen the beam, the scores are exact already
+            return searcher.search(DefaultSearchScoreProvider.exact(query, DOT_PRODUCT, scratch.view), topK,
+                    Math.max(topK, rerankK), 0f, 0f, acceptOrds);
+        }
+        VectorFloat<?> prefix = VTS.createFloatVector(PrefixVectorValues.prefix(query, prefixes.dimension()));
+        SearchResult candidates = searcher.search(DefaultSearchScoreProvider.exact(prefix, DOT_PRODUCT,
+                scratch.prefixView), Math.max(topK, rerankK), acceptOrds);
+        MutableVectorValues view = scratch.view;
+        FlatIndex.TopK top = new FlatIndex.TopK(topK);
+        for (SearchResult.NodeScore candidate : candidates.getNodes()) {
+            top.offer(candidate.node, DOT_PRODUCT.compare(query, view.getVector(candidate.node)));
+        }
+        SearchResult reranked = top.result(candidates.getVisitedCount());
+        return new SearchResult(reranked.getNodes(), candidates.getVisitedCount(), candidates.getExpandedCount(),
+                candidates.getExpandedCountBaseLayer(), candidates.getNodes().length,
+                candidates.getWorstApproximateScoreInTopK());
+    }
+
+    @Override
+    public void write(Path path) throws IOException {
+        // inserts may leave nodes above the max degree until the graph is cleaned up
+        builder.cleanup();
+        OnDiskGraphIndex.write(builder.getGraph(), vectors.copy(), path);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(IndexManifest.sibling(path, IndexManifest.GRAPH_SUFFIX))))) {
+            builder.getGraph().save(out);
+        }
+    }
+
+    @Override
+    public long bytesUsed() {
+        return builder.getGraph().ramBytesUsed() + (prefixes == vectors ? 0 : prefixes.bytesUsed());
+    }
+
+    @Override
+    public GraphIndex graph() {
+        return builder.getGraph();
+    }
+
+    @Override
+    public void close() {
+        searchers.close();
+        try {
+            builder.close();
+        } catch (IOException e) {
+            log.warn("Failed to close index builder", e);
+        }
+    }
+
+    /**
+     * A searcher with the views it scores through, each view fills its own scratch vector
+     */
+    private static class Scratch implements Closeable {
+        private final GraphSearcher searcher;
+        private final MutableVectorValues view;
+        private final MutableVectorValues prefixView;
+
+        Scratch(GraphSearcher searcher, MutableVectorValues view, MutableVectorValues prefixView) {
+            this.searcher = searcher;
+            this.view = view;
+            this.prefixView = prefixView;
+        }
+
+        @Override
+        public void close() throws IOException {
+            searcher.close();
+        }
+    }
+}
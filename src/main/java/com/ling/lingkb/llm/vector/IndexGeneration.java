@@ -0,0 +1,899 @@
+package com.ling.lingkb.llm.vector;
+
+import static io.github.jbellis.jvector.vector.VectorSimilarityFunction.DOT_PRODUCT;
+import com.ling.lingkb.entity.IndexStats;
+import io.github.jbellis.jvector.graph.GraphIndex;
+import io.github.jbellis.jvector.graph.SearchResult;
+import io.github.jbellis.jvector.util.Bits;
+import io.github.jbellis.jvector.util.ThreadSafeGrowableBitSet;
+import io.github.jbellis.jvector.vector.VectorizationProvider;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import io.github.jbellis.jvector.vector.types.VectorTypeSupport;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * One published version of a vector index: the search structure, its vector values and the ordinal to id mapping.
+ * The heap vectors are searched by a pluggable {@link VectorIndex} chosen by {@link VectorIndexType}.
+ * <p>
+ * A generation is never rebuilt in place, a rebuild creates a new generation and swaps it in with
+ * {@link #publish}. Nodes may still be appended to the current generation. Readers hold a reference
+ * while searching so the old generation is closed only after the last reader released it.
+ * <p>
+ * Deleted nodes are tombstoned: they stay in the index but are filtered out of every search until
+ * {@link #compact(Snapshot, VectorIndexType)} packs the live nodes into a new generation.
+ * <p>
+ * A disk resident generation keeps its rows in immutable {@link DiskSegment}s and only the nodes inserted since
+ * the last flush on heap, like the memtable of a log structured merge tree. Ordinals run through the segments
+ * in order and continue with the heap part. {@link #flush} writes the heap part out as a new segment and
+ * {@link #merge} combines segments, both publish a new generation sharing the untouched segments.
+ * <p>
+ * Every node is tagged with its {@link NodeType}, so the sentences and links of a workspace may share one
+ * generation and be found by a single search.
+ * <p>
+ * With an index dimension the graphs are built over a prefix of the vectors and reranked with the full vectors,
+ * see {@link PrefixVectorValues}. The vectors themselves are always kept and written in full.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/4
+ */
+public class IndexGeneration implements Closeable {
+    private static final VectorTypeSupport VTS = VectorizationProvider.getInstance().getVectorTypeSupport();
+    /**
+     * Filtered searches accepting at most this many nodes score them one by one instead of traversing the index,
+     * that costs no more than the nodes an unfiltered traversal visits and a selective filter cannot starve it
+     */
+    private static final int EXACT_FILTER_MAX = 4096;
+
+    private final MutableVectorValues vectors;
+    private final VectorIndex engine;
+    private final List<DiskSegment> segments;
+    /**
+     * The ordinal of the first node of every segment
+     */
+    private final int[] segmentStarts;
+    private final int baseSize;
+    private final AtomicInteger refCount = new AtomicInteger(1);
+    private final OrdinalMapping mapping;
+    private final ThreadSafeGrowableBitSet deleted = new ThreadSafeGrowableBitSet(0);
+    private final AtomicInteger deletedCount = new AtomicInteger();
+    private final GraphConfig graph;
+    /**
+     * How long building the structure of this generation took, or loading it from its files
+     */
+    private volatile long buildMillis;
+    private volatile boolean retainFiles;
+
+    private IndexGeneration(MutableVectorValues vectors, OrdinalMapping mapping, List<DiskSegment> segments,
+                            VectorIndexType type, GraphConfig graph) {
+        this(vectors, mapping, segments, type.create(vectors, graph), graph);
+    }
+
+    private IndexGeneration(MutableVectorValues vectors, OrdinalMapping mapping, List<DiskSegment> segments,
+                            VectorIndex engine, GraphConfig graph) {
+        this.vectors = vectors;
+        this.graph = graph;
+        this.engine = engine;
+        this.mapping = mapping;
+        this.segments = segments;
+        this.segmentStarts = new int[segments.size()];
+        int start = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            segments.get(i).retain();
+            segmentStarts[i] = start;
+            start += segments.get(i).size();
+        }
+        this.baseSize = start;
+    }
+
+    /**
+     * An empty generation to be filled with {@link #append} and finished with {@link #buildGraph()}
+     *
+     * @param graph how the graphs are built and the leading dimensions they are built over
+     */
+    public static IndexGeneration create(int dimension, GraphConfig graph, VectorIndexType type) {
+        return create(dimension, graph, type, 1);
+    }
+
+    /**
+     * @param idStride the distance between the ids of the generation, the shard count for a shard of a text index
+     *                 sharded by id
+     */
+    public static IndexGeneration create(int dimension, GraphConfig graph, VectorIndexType type, int idStride) {
+        return new IndexGeneration(new MutableVectorValues(dimension), new OrdinalMapping(idStride), new ArrayList<>(),
+                type, graph);
+    }
+
+    /**
+     * Collects the rows of a heap generation, built with {@link #buildGraph()} once they are all in
+     */
+    public static Builder builder(int dimension, GraphConfig graph, VectorIndexType type, int idStride) {
+        return new HeapBuilder(create(dimension, graph, type, idStride));
+    }
+
+    /**
+     * Spools the rows of a disk resident generation to a mapped file next to {@code path}, the segment is built
+     * from it once they are all in. Failing to spool a row fails {@link Builder#build()} rather than the stream
+     * feeding the rows, which may feed other builders too.
+     *
+     * @param path where the segment files are written, they are removed when the generation is closed
+     * @param type the engine of the nodes inserted before the next flush
+     */
+    public static Builder diskResidentBuilder(Path path, int dimension, GraphConfig graph, int subspaces,
+                                              VectorIndexType type, int idStride) throws IOException {
+        return new DiskBuilder(path, dimension, graph, subspaces, type, idStride);
+    }
+
+    /**
+     * A new generation with the heap part of the snapshot written out as a new segment at {@code path}, ordinals
+     * and tombstones are unchanged. Only the vectors inserted since the last flush are written.
+     *
+     * @param type the engine of the new, empty heap part
+     */
+    public IndexGeneration flush(Snapshot snapshot, Path path, int subspaces, VectorIndexType type)
+            throws IOException {
+        long start = System.nanoTime();
+        int dimension = vectors.dimension();
+        Path spool = IndexManifest.sibling(path, ".spool");
+        DiskSegment segment;
+        try {
+            try (MappedVectorValues.Writer writer = new MappedVectorValues.Writer(spool, dimension)) {
+                MutableVectorValues view = vectors.copy();
+                for (int i = 0; i < snapshot.size - baseSize; i++) {
+                    writer.add(view.getVector(i));
+                }
+            }
+            segment = DiskSegment.build(path, MappedVectorValues.open(spool, dimension), subspaces, graph);
+        } finally {
+            Files.deleteIfExists(spool);
+        }
+        List<DiskSegment> flushed = new ArrayList<>(segments);
+        flushed.add(segment);
+        IndexGeneration generation = new IndexGeneration(new MutableVectorValues(dimension),
+                snapshot.mapping.copy(snapshot.size), flushed, type, graph);
+        generation.restoreTombstones();
+        return generation.built(start);
+    }
+
+    /**
+     * A new generation with the segments {@code [from, to)} combined into one segment at {@code path}, the nodes
+     * tombstoned in the snapshot are dropped. The heap part is indexed again by a new engine of the same type.
+     */
+    public IndexGeneration merge(Snapshot snapshot, int from, int to, Path path, int subspaces) throws IOException {
+        long mergeStart = System.nanoTime();
+        OrdinalMapping live = snapshot.mapping;
+        int dimension = vectors.dimension();
+        OrdinalMapping merged = new OrdinalMapping(snapshot.mapping.stride());
+        Path spool = IndexManifest.sibling(path, ".spool");
+        List<DiskSegment> mergedSegments = new ArrayList<>(segments.subList(0, from));
+        int written;
+        try {
+            int[] next = {0};
+            try (MappedVectorValues.Writer writer = new MappedVectorValues.Writer(spool, dimension)) {
+                for (int s = 0; s < segments.size(); s++) {
+                    int start = segmentStarts[s];
+                    if (s < from || s >= to) {
+                        for (int i = 0; i < segments.get(s).size(); i++) {
+                            merged.set(next[0]++, live.type(start + i), live.id(start + i));
+                        }
+                        continue;
+                    }
+                    segments.get(s).forEachVector((vector, i) -> {
+                        int id = live.id(start + i);
+                        if (id == OrdinalMapping.ABSENT) {
+                            return;
+                        }
+                        try {
+                            writer.add(vector);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        merged.set(next[0]++, live.type(start + i), id);
+                    });
+                }
+                written = writer.size();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            // every node of the merged segments may have been deleted
+            if (written > 0) {
+                mergedSegments
+                        .add(DiskSegment.build(path, MappedVectorValues.open(spool, dimension), subspaces, graph));
+            }
+        } finally {
+            Files.deleteIfExists(spool);
+        }
+        mergedSegments.addAll(segments.subList(to, segments.size()));
+        IndexGeneration generation = new IndexGeneration(new MutableVectorValues(dimension), merged, mergedSegments,
+                engine.type(), graph);
+        MutableVectorValues view = vectors.copy();
+        for (int i = 0; i < snapshot.size - baseSize; i++) {
+            int id = live.id(baseSize + i);
+            if (id != OrdinalMapping.ABSENT) {
+                generation.append(view.getVector(i), live.type(baseSize + i), id);
+            }
+        }
+        generation.restoreTombstones();
+        return generation.buildGraph().built(mergeStart);
+    }
+
+    /**
+     * Add a vector without indexing it, used while streaming the rows of a rebuild
+     */
+    public void append(float[] vector, NodeType type, int id) {
+        mapping.set(baseSize + vectors.add(vector), type, id);
+    }
+
+    /**
+     * Index all appended vectors
+     */
+    public IndexGeneration buildGraph() {
+        long start = System.nanoTime();
+        engine.build();
+        return built(start);
+    }
+
+    private IndexGeneration built(long start) {
+        buildMillis = (System.nanoTime() - start) / 1_000_000;
+        return this;
+    }
+
+    /**
+     * Take a reference to the current generation, to be returned with {@link #release()}
+     */
+    public static IndexGeneration acquire(AtomicReference<IndexGeneration> current) {
+        while (true) {
+            IndexGeneration generation = current.get();
+            if (generation == null || generation.tryAcquire()) {
+                return generation;
+            }
+        }
+    }
+
+    /**
+     * Swap in a new generation, the previous one is closed once its readers are gone
+     */
+    public static void publish(AtomicReference<IndexGeneration> current, IndexGeneration generation) {
+        IndexGeneration previous = current.getAndSet(generation);
+        if (previous != null) {
+            previous.release();
+        }
+    }
+
+    private boolean tryAcquire() {
+        int count;
+        do {
+            count = refCount.get();
+            if (count == 0) {
+                return false;
+            }
+        } while (!refCount.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    public void release() {
+        if (refCount.decrementAndGet() == 0) {
+            close();
+        }
+    }
+
+    /**
+     * Reserve an ordinal for the vector, it becomes searchable after {@link #index(int, NodeType, int)}
+     */
+    public int add(float[] vector) {
+        return baseSize + vectors.add(vector);
+    }
+
+    /**
+     * Bind the ordinal to its type and stable id and insert it into the index
+     */
+    public void index(int ordinal, NodeType type, int id) {
+        mapping.set(ordinal, type, id);
+        engine.add(ordinal - baseSize);
+    }
+
+    /**
+     * Tombstone the node of the id, it is excluded from searches right away
+     *
+     * @return false if the id is not part of this generation
+     */
+    public boolean delete(NodeType type, int id) {
+        int ordinal = mapping.ordinal(type, id);
+        if (ordinal == OrdinalMapping.ABSENT) {
+            return false;
+        }
+        mapping.remove(ordinal);
+        deleted.set(ordinal);
+        deletedCount.incrementAndGet();
+        if (ordinal >= baseSize) {
+            engine.delete(ordinal - baseSize);
+        }
+        return true;
+    }
+
+    /**
+     * A new heap generation holding the nodes live in the snapshot under dense ordinals. The vectors of a disk
+     * resident generation are read from its segments, so the database is not read again.
+     *
+     * @param type the engine of the new generation, it may differ from the current one once the corpus has grown
+     */
+    public IndexGeneration compact(Snapshot snapshot, VectorIndexType type) throws IOException {
+        IndexGeneration generation = create(vectors.dimension(), graph, type, mapping.stride());
+        OrdinalMapping live = snapshot.mapping;
+        for (int s = 0; s < segments.size(); s++) {
+            int start = segmentStarts[s];
+            segments.get(s).forEachVector((vector, i) -> {
+                int id = live.id(start + i);
+                if (id != OrdinalMapping.ABSENT) {
+                    generation.append(vector, live.type(start + i), id);
+                }
+            });
+        }
+        MutableVectorValues view = vectors.copy();
+        for (int ordinal = baseSize; ordinal < snapshot.size; ordinal++) {
+            int id = live.id(ordinal);
+            if (id != OrdinalMapping.ABSENT) {
+                generation.append(view.getVector(ordinal - baseSize), live.type(ordinal), id);
+            }
+        }
+        return generation.buildGraph();
+    }
+
+    /**
+     * The nodes of this generation at this point, for a new generation built from them while inserts and deletes
+     * go on. Taken with the lock of the workspace held, so no insert is half done.
+     */
+    public Snapshot snapshot() {
+        int size = size();
+        return new Snapshot(size, mapping.copy(size), deletedCount.get());
+    }
+
+    /**
+     * Replay the changes made to {@code source} since {@code snapshot} was taken of it: tombstone the nodes deleted
+     * and index the nodes inserted since. Called with the lock of the workspace held, right before this generation
+     * is published in place of {@code source}.
+     */
+    public IndexGeneration catchUp(IndexGeneration source, Snapshot snapshot) {
+        if (source.deletedCount.get() != snapshot.deleted) {
+            for (int ordinal = 0; ordinal < snapshot.size; ordinal++) {
+                int id = snapshot.mapping.id(ordinal);
+                if (id != OrdinalMapping.ABSENT && source.deleted.get(ordinal)) {
+                    delete(snapshot.mapping.type(ordinal), id);
+                }
+            }
+        }
+        MutableVectorValues view = source.vectors.copy();
+        for (int ordinal = snapshot.size; ordinal < source.size(); ordinal++) {
+            int id = source.mapping.id(ordinal);
+            if (id != OrdinalMapping.ABSENT) {
+                index(baseSize + vectors.add(view.getVector(ordinal - source.baseSize)), source.mapping.type(ordinal),
+                        id);
+            }
+        }
+        return this;
+    }
+
+    private void append(VectorFloat<?> vector, NodeType type, int id) {
+        mapping.set(baseSize + vectors.add(vector), type, id);
+    }
+
+    public SearchResult search(float[] query, int topK) {
+        return search(query, topK, topK);
+    }
+
+    /**
+     * @param rerankK how many candidates of the disk resident part, or of a graph built over prefixes, are rescored
+     *                with the full vectors
+     */
+    public SearchResult search(float[] query, int topK, int rerankK) {
+        return search(query, topK, rerankK, null);
+    }
+
+    /**
+     * @param accept the {@link NodeType#key}s of the nodes that may be found, null to accept every node
+     */
+    public SearchResult search(float[] query, int topK, int rerankK, NodeBitmap accept) {
+        return search(query, topK, rerankK, accept, null);
+    }
+
+    /**
+     * @param type the only type of node that may be found, null to accept every type
+     */
+    public SearchResult search(float[] query, int topK, int rerankK, NodeBitmap accept, NodeType type) {
+        VectorFloat<?> queryVector = VTS.createFloatVector(query);
+        if (accept != null && accept.cardinality() <= EXACT_FILTER_MAX) {
+            return searchExact(queryVector, topK, accept, type);
+        }
+        Bits live = acceptedNodes(accept, type);
+        if (segments.isEmpty()) {
+            return engine.search(queryVector, topK, rerankK, live);
+        }
+        List<SearchResult> results = new ArrayList<>();
+        int[] offsets = new int[segments.size() + 1];
+        for (int s = 0; s < segments.size(); s++) {
+            int start = segmentStarts[s];
+            offsets[s] = start;
+            results.add(segments.get(s).search(queryVector, topK, rerankK,
+                    live == Bits.ALL ? Bits.ALL : node -> live.get(start + node)));
+        }
+        if (vectors.size() > 0) {
+            offsets[segments.size()] = baseSize;
+            results.add(engine.search(queryVector, topK, rerankK,
+                    live == Bits.ALL ? Bits.ALL : node -> live.get(baseSize + node)));
+        }
+        return merge(results, offsets, topK);
+    }
+
+    private SearchResult searchExact(VectorFloat<?> query, int topK, NodeBitmap accept, NodeType type) {
+        FlatIndex.TopK top = new FlatIndex.TopK(topK);
+        MutableVectorValues view = vectors.copy();
+        int[] visited = {0};
+        accept.forEach(key -> {
+            if (type != null && NodeType.ofKey(key) != type) {
+                return;
+            }
+            int ordinal = mapping.ordinal(NodeType.ofKey(key), NodeType.idOf(key));
+            if (ordinal != OrdinalMapping.ABSENT && !deleted.get(ordinal)) {
+                float score;
+                if (ordinal >= baseSize) {
+                    score = DOT_PRODUCT.compare(query, view.getVector(ordinal - baseSize));
+                } else {
+                    int segment = Arrays.binarySearch(segmentStarts, ordinal);
+                    segment = segment >= 0 ? segment : -segment - 2;
+                    score = segments.get(segment).score(query, ordinal - segmentStarts[segment]);
+                }
+                top.offer(ordinal, score);
+                visited[0]++;
+            }
+        });
+        return top.result(visited[0]);
+    }
+
+    /**
+     * The live ordinals whose node is in {@code accept} and of {@code type}
+     */
+    private Bits acceptedNodes(NodeBitmap accept, NodeType type) {
+        Bits live = liveNodes();
+        if (accept == null && type == null) {
+            return live;
+        }
+        return ordinal -> {
+            int id = mapping.id(ordinal);
+            return id != OrdinalMapping.ABSENT && live.get(ordinal) && (type == null || mapping.type(ordinal) == type)
+                    && (accept == null || accept.get(mapping.type(ordinal).key(id)));
+        };
+    }
+
+    /**
+     * Merge the results of the segments and the heap part by score, nodes are shifted to their ordinals
+     */
+    private static SearchResult merge(List<SearchResult> results, int[] offsets, int topK) {
+        List<SearchResult.NodeScore> nodes = new ArrayList<>();
+        int visited = 0;
+        int expanded = 0;
+        int expandedBaseLayer = 0;
+        int reranked = 0;
+        float worst = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < results.size(); i++) {
+            SearchResult result = results.get(i);
+            for (SearchResult.NodeScore nodeScore : result.getNodes()) {
+                nodes.add(new SearchResult.NodeScore(offsets[i] + nodeScore.node, nodeScore.score));
+            }
+            visited += result.getVisitedCount();
+            expanded += result.getExpandedCount();
+            expandedBaseLayer += result.getExpandedCountBaseLayer();
+            reranked += result.getRerankedCount();
+            worst = Math.min(worst, result.getWorstApproximateScoreInTopK());
+        }
+        nodes.sort(Comparator.comparingDouble((SearchResult.NodeScore nodeScore) -> nodeScore.score).reversed());
+        SearchResult.NodeScore[] merged = nodes.subList(0, Math.min(topK, nodes.size()))
+                .toArray(new SearchResult.NodeScore[0]);
+        return new SearchResult(merged, visited, expanded, expandedBaseLayer, reranked, worst);
+    }
+
+    /**
+     * The accept filter of searches, everything but the tombstoned ordinals
+     */
+    public Bits liveNodes() {
+        return deletedCount.get() == 0 ? Bits.ALL : Bits.inverseOf(deleted);
+    }
+
+    public int id(int ordinal) {
+        return mapping.id(ordinal);
+    }
+
+    public NodeType type(int ordinal) {
+        return mapping.type(ordinal);
+    }
+
+    /**
+     * The ordinal of the stable id, -1 if it is not part of this generation
+     */
+    public int ordinal(NodeType type, int id) {
+        return mapping.ordinal(type, id);
+    }
+
+    public int size() {
+        return baseSize + vectors.size();
+    }
+
+    public int liveSize() {
+        return size() - deletedCount.get();
+    }
+
+    /**
+     * The share of tombstoned nodes, compaction is worth it once this grows
+     */
+    public double deletedRatio() {
+        int size = size();
+        return size == 0 ? 0 : (double) deletedCount.get() / size;
+    }
+
+    public boolean isDiskResident() {
+        return !segments.isEmpty();
+    }
+
+    /**
+     * The number of nodes held on heap, those inserted since the last flush for a disk resident generation
+     */
+    public int heapSize() {
+        return vectors.size();
+    }
+
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    public int segmentSize(int segment) {
+        return segments.get(segment).size();
+    }
+
+    /**
+     * The number of tombstoned nodes in the segment
+     */
+    public int segmentDeleted(int segment) {
+        if (deletedCount.get() == 0) {
+            return 0;
+        }
+        int deletedNodes = 0;
+        int start = segmentStarts[segment];
+        for (int ordinal = start; ordinal < start + segments.get(segment).size(); ordinal++) {
+            if (deleted.get(ordinal)) {
+                deletedNodes++;
+            }
+        }
+        return deletedNodes;
+    }
+
+    /**
+     * Heap and direct memory held by the vectors, the index structure and the product quantized codes
+     */
+    public long bytesUsed() {
+        return vectors.bytesUsed() + engine.bytesUsed() +
+                segments.stream().mapToLong(DiskSegment::codeBytes).sum();
+    }
+
+    /**
+     * Sizes, build time and graph shape of this generation. Every graph is walked, which takes about as long as
+     * reading their neighbour lists once.
+     *
+     * @param path where the generation is written, its files as last written are counted in the on-disk size
+     */
+    public IndexStats stats(Path path) throws IOException {
+        GraphCensus census = new GraphCensus();
+        Bits live = liveNodes();
+        long diskBytes = IndexManifest.diskBytes(path);
+        for (int s = 0; s < segments.size(); s++) {
+            int start = segmentStarts[s];
+            census.add(segments.get(s).graph(), live == Bits.ALL ? Bits.ALL : node -> live.get(start + node));
+            diskBytes += segments.get(s).fileBytes();
+        }
+        GraphIndex heapGraph = engine.graph();
+        if (heapGraph != null) {
+            census.add(heapGraph, live == Bits.ALL ? Bits.ALL : node -> live.get(baseSize + node));
+        }
+        return IndexStats.builder().engine(engine.type().name()).diskResident(isDiskResident()).nodes(liveSize())
+                .tombstones(deletedCount.get()).segments(segments.size()).heapNodes(heapSize())
+                .heapBytes(bytesUsed()).diskBytes(diskBytes).buildMillis(buildMillis)
+                .maxDegree(heapGraph == null && segments.isEmpty() ? 0 : graph.getMaxDegree())
+                .degreeHistogram(census.histogram()).meanDegree(census.meanDegree())
+                .unreachable(census.unreachable()).build();
+    }
+
+    /**
+     * Keep the segment files when this generation is closed, used when it is unloaded rather than replaced
+     */
+    public void retainFiles() {
+        retainFiles = true;
+    }
+
+    public VectorIndexType getType() {
+        return engine.type();
+    }
+
+    public GraphConfig getGraph() {
+        return graph;
+    }
+
+    public MutableVectorValues getVectors() {
+        return vectors;
+    }
+
+    /**
+     * Write the vectors to {@code path} with the structure of the engine and the id mapping next to it and
+     * finally the manifest describing them. Tombstones are written as id -1 in the mapping. A disk resident
+     * generation only writes the mapping and the vectors inserted since the last flush, its segments are already
+     * on disk.
+     */
+    public void write(Path path) throws IOException {
+        int size = size();
+        if (segments.isEmpty()) {
+            Files.deleteIfExists(IndexManifest.sibling(path, IndexManifest.DELTA_SUFFIX));
+            // the side files of another engine would be stamped as part of the index
+            Files.deleteIfExists(IndexManifest.sibling(path, IndexManifest.GRAPH_SUFFIX));
+            Files.deleteIfExists(IndexManifest.sibling(path, IndexManifest.IVF_SUFFIX));
+            engine.write(path);
+        } else {
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(IndexManifest.sibling(path, IndexManifest.GRAPH_SUFFIX));
+            Files.deleteIfExists(IndexManifest.sibling(path, IndexManifest.IVF_SUFFIX));
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(IndexManifest.sibling(path, IndexManifest.DELTA_SUFFIX))))) {
+                MutableVectorValues view = vectors.copy();
+                out.writeInt(size - baseSize);
+                for (int i = 0; i < size - baseSize; i++) {
+                    VectorFloat<?> vector = view.getVector(i);
+                    for (int j = 0; j < vector.length(); j++) {
+                        out.writeFloat(vector.get(j));
+                    }
+                }
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(IndexManifest.sibling(path, IndexManifest.IDS_SUFFIX))))) {
+            mapping.write(out, size);
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(IndexManifest.sibling(path, IndexManifest.TYPES_SUFFIX))))) {
+            mapping.writeTypes(out, size);
+        }
+        segments.forEach(DiskSegment::list);
+        new IndexManifest(size - deletedCount.get(), mapping.maxId(size), vectors.dimension(), 0,
+                segments.stream().map(segment -> segment.getPath().toString()).collect(Collectors.toList()),
+                engine.type(), true, graph.getIndexDimension(), new HashMap<>(), new ArrayList<>()).write(path);
+    }
+
+    /**
+     * Open the index written by {@link #write(Path)}, the vectors are read back and the structure of the engine is
+     * loaded as is, so nothing is parsed or rebuilt. The segments of a disk resident index are mapped and only the
+     * few vectors inserted after the last flush are indexed again.
+     *
+     * @param type  the type of every node of an index written before nodes were typed
+     * @param graph how nodes inserted later are linked into a loaded graph, its index dimension has to match
+     *              the manifest
+     * @param idStride the distance between the ids of the generation, see {@link #create(int, GraphConfig,
+     *                 VectorIndexType, int)}
+     * @throws IOException if the files are missing, do not match the manifest or cannot be read
+     */
+    public static IndexGeneration load(Path path, IndexManifest manifest, NodeType type, GraphConfig graph,
+                                       int idStride) throws IOException {
+        long start = System.nanoTime();
+        if (!manifest.verify(path)) {
+            throw new IOException("The files of " + path + " changed since their manifest was written");
+        }
+        OrdinalMapping mapping;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(IndexManifest.sibling(path, IndexManifest.IDS_SUFFIX))))) {
+            mapping = OrdinalMapping.read(in, idStride);
+        }
+        Path typesPath = IndexManifest.sibling(path, IndexManifest.TYPES_SUFFIX);
+        if (Files.exists(typesPath)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(typesPath)))) {
+                mapping.readTypes(in);
+            }
+        } else {
+            mapping.retype(type);
+        }
+        IndexGeneration generation = manifest.getSegments().isEmpty() ? loadHeap(path, manifest, mapping, graph) :
+                loadDisk(path, manifest, mapping, graph);
+        generation.restoreTombstones();
+        if (generation.liveSize() != manifest.getCount()) {
+            generation.retainFiles();
+            generation.close();
+            throw new IOException("Index " + path + " does not match its manifest");
+        }
+        return generation.built(start);
+    }
+
+    /**
+     * Tombstone the ordinals whose id was removed from the mapping
+     */
+    private void restoreTombstones() {
+        for (int ordinal = 0; ordinal < mapping.size(); ordinal++) {
+            if (mapping.id(ordinal) == OrdinalMapping.ABSENT && !deleted.get(ordinal)) {
+                deleted.set(ordinal);
+                deletedCount.incrementAndGet();
+            }
+        }
+    }
+
+    private static IndexGeneration loadHeap(Path path, IndexManifest manifest, OrdinalMapping mapping,
+                                            GraphConfig graph) throws IOException {
+        MutableVectorValues values = new MutableVectorValues(manifest.getDimension());
+        VectorIndex engine = manifest.getEngine().load(path, values, mapping.size(), graph);
+        return new IndexGeneration(values, mapping, new ArrayList<>(), engine, graph);
+    }
+
+    private static IndexGeneration loadDisk(Path path, IndexManifest manifest, OrdinalMapping mapping,
+                                            GraphConfig graph) throws IOException {
+        MutableVectorValues values = new MutableVectorValues(manifest.getDimension());
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(IndexManifest.sibling(path, IndexManifest.DELTA_SUFFIX))))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                float[] vector = new float[manifest.getDimension()];
+                for (int j = 0; j < vector.length; j++) {
+                    vector[j] = in.readFloat();
+                }
+                values.add(vector);
+            }
+        }
+        List<DiskSegment> segments = new ArrayList<>();
+        int size = values.size();
+        try {
+            for (String segment : manifest.getSegments()) {
+                segments.add(DiskSegment.open(Path.of(segment)));
+                size += segments.get(segments.size() - 1).size();
+            }
+        } catch (IOException e) {
+            segments.forEach(DiskSegment::unmap);
+            throw e;
+        }
+        if (size != mapping.size()) {
+            segments.forEach(DiskSegment::unmap);
+            throw new IOException("Index " + path + " does not match its manifest");
+        }
+        return new IndexGeneration(values, mapping, segments, manifest.getEngine(), graph).buildGraph();
+    }
+
+    /**
+     * Receives the rows of a generation being built
+     */
+    @FunctionalInterface
+    public interface Rows {
+        void accept(float[] vector, NodeType type, int id);
+    }
+
+    /**
+     * Receives the rows of a generation and builds it, closing it drops the rows of a generation never built
+     */
+    public interface Builder extends Rows, Closeable {
+        IndexGeneration build() throws IOException;
+    }
+
+    private static class HeapBuilder implements Builder {
+        private final IndexGeneration generation;
+        private boolean built;
+
+        HeapBuilder(IndexGeneration generation) {
+            this.generation = generation;
+        }
+
+        @Override
+        public void accept(float[] vector, NodeType type, int id) {
+            generation.append(vector, type, id);
+        }
+
+        @Override
+        public IndexGeneration build() {
+            built = true;
+            return generation.buildGraph();
+        }
+
+        @Override
+        public void close() {
+            if (!built) {
+                generation.release();
+            }
+        }
+    }
+
+    private static class DiskBuilder implements Builder {
+        private final Path path;
+        private final Path spool;
+        private final int dimension;
+        private final GraphConfig graph;
+        private final int subspaces;
+        private final VectorIndexType type;
+        private final OrdinalMapping mapping;
+        private final MappedVectorValues.Writer writer;
+        private IOException failure;
+
+        DiskBuilder(Path path, int dimension, GraphConfig graph, int subspaces, VectorIndexType type, int idStride)
+                throws IOException {
+            this.path = path;
+            this.spool = IndexManifest.sibling(path, ".spool");
+            this.dimension = dimension;
+            this.graph = graph;
+            this.subspaces = subspaces;
+            this.type = type;
+            this.mapping = new OrdinalMapping(idStride);
+            this.writer = new MappedVectorValues.Writer(spool, dimension);
+        }
+
+        @Override
+        public void accept(float[] vector, NodeType nodeType, int id) {
+            if (failure != null) {
+                return;
+            }
+            try {
+                mapping.set(writer.add(vector), nodeType, id);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+
+        @Override
+        public IndexGeneration build() throws IOException {
+            writer.close();
+            if (failure != null) {
+                throw failure;
+            }
+            if (mapping.size() == 0) {
+                return create(dimension, graph, type, mapping.stride());
+            }
+            long start = System.nanoTime();
+            DiskSegment segment = DiskSegment.build(path, MappedVectorValues.open(spool, dimension), subspaces, graph);
+            return new IndexGeneration(new MutableVectorValues(dimension), mapping, List.of(segment), type, graph)
+                    .built(start);
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+            Files.deleteIfExists(spool);
+        }
+    }
+
+    @Override
+    public void close() {
+        engine.close();
+        for (DiskSegment segment : segments) {
+            segment.release(retainFiles);
+        }
+    }
+
+    /**
+     * The number of nodes of a generation at one point and their ids, the deleted ones with id -1
+     */
+    public static final class Snapshot {
+        private final int size;
+        private final OrdinalMapping mapping;
+        /**
+         * The tombstones counted at that point, when unchanged nothing was deleted since
+         */
+        private final int deleted;
+
+        private Snapshot(int size, OrdinalMapping mapping, int deleted) {
+            this.size = size;
+            this.mapping = mapping;
+            this.deleted = deleted;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.ling.lingkb.llm.vector;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.zip.CRC32C;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Describes the index files written next to an index path, used at startup to decide whether the files still
+ * match the database and can be opened instead of rebuilding. The files are recognized by the size and
+ * modification time they had when the manifest was written, so opening an index does not read it twice.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/6
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IndexManifest {
+    static final String GRAPH_SUFFIX = ".graph";
+    static final String IDS_SUFFIX = ".ids";
+    static final String DELTA_SUFFIX = ".delta";
+    static final String IVF_SUFFIX = ".ivf";
+    static final String TYPES_SUFFIX = ".types";
+    static final String MANIFEST_SUFFIX = ".manifest";
+    private static final String[] FILE_SUFFIXES = {"", GRAPH_SUFFIX, IDS_SUFFIX, DELTA_SUFFIX, IVF_SUFFIX, TYPES_SUFFIX};
+
+    private int count;
+    /**
+     * The largest node id of a text index or the largest row id of a link index
+     */
+    private int maxId;
+    private int dimension;
+    /**
+     * A checksum over the index files, only written by versions that had no file stamps
+     */
+    private long checksum;
+    /**
+     * The segment files of a disk resident index in ordinal order, empty for an index held on heap
+     */
+    private List<String> segments = new ArrayList<>();
+    /**
+     * The {@link VectorIndexType} of the heap part, indexes written before engines were pluggable are graphs
+     */
+    private VectorIndexType engine = VectorIndexType.HNSW;
+    /**
+     * Whether the vectors are scaled to unit length and scored by dot product, older files are rebuilt
+     */
+    private boolean normalized;
+    /**
+     * The leading dimensions the graphs are built over, 0 for the full vectors
+     */
+    private int indexDimension;
+    /**
+     * The stamp of every index file by its suffix, empty for a manifest written with a checksum
+     */
+    private Map<String, String> fileStamps = new HashMap<>();
+    /**
+     * The stamp of every segment file in the order of the segments
+     */
+    private List<String> segmentStamps = new ArrayList<>();
+
+    /**
+     * Whether the files described by this manifest hold exactly the rows described by {@code database} and were
+     * indexed with the configured dimensions
+     */
+    public boolean matches(IndexManifest database, int dimension, int indexDimension) {
+        return database != null && count == database.count && maxId == database.maxId &&
+                this.dimension == dimension && this.indexDimension == indexDimension && normalized;
+    }
+
+    static Path sibling(Path path, String suffix) {
+        return path.resolveSibling(path.getFileName() + suffix);
+    }
+
+    /**
+     * Size and modification time of a file, both survive a rename to the backup path
+     */
+    private static String stamp(Path file) throws IOException {
+        return Files.size(file) + "/" + Files.getLastModifiedTime(file).toMillis();
+    }
+
+    /**
+     * Whether the index files at {@code path} and the segments are still those the manifest was written for. A
+     * manifest of an older version is checked against its checksum instead, which reads the files once.
+     */
+    boolean verify(Path path) throws IOException {
+        if (fileStamps.isEmpty()) {
+            return checksum(path) == checksum;
+        }
+        for (Map.Entry<String, String> entry : fileStamps.entrySet()) {
+            Path file = sibling(path, entry.getKey());
+            if (Files.notExists(file) || !entry.getValue().equals(stamp(file))) {
+                return false;
+            }
+        }
+        for (int i = 0; i < segments.size(); i++) {
+            Path segment = Path.of(segments.get(i));
+            if (i >= segmentStamps.size() || Files.notExists(segment) ||
+                    !segmentStamps.get(i).equals(stamp(segment))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long checksum(Path path) throws IOException {
+        CRC32C crc = new CRC32C();
+        byte[] buffer = new byte[1 << 16];
+        for (String suffix : FILE_SUFFIXES) {
+            if (Files.notExists(sibling(path, suffix))) {
+                continue;
+            }
+            try (InputStream in = Files.newInputStream(sibling(path, suffix))) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    crc.update(buffer, 0, read);
+                }
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * The size of the index files at {@code path} with the manifest, the segments of a disk resident index are not
+     * counted
+     */
+    static long diskBytes(Path path) throws IOException {
+        long bytes = 0;
+        for (String suffix : FILE_SUFFIXES) {
+            if (Files.exists(sibling(path, suffix))) {
+                bytes += Files.size(sibling(path, suffix));
+            }
+        }
+        Path manifest = sibling(path, MANIFEST_SUFFIX);
+        return Files.exists(manifest) ? bytes + Files.size(manifest) : bytes;
+    }
+
+    /**
+     * Read the manifest of the index at {@code path}, null if there is none
+     */
+    public static IndexManifest read(Path path) throws IOException {
+        Path manifestPath = sibling(path, MANIFEST_SUFFIX);
+        if (Files.notExists(manifestPath)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(manifestPath)) {
+            properties.load(in);
+        }
+        List<String> segments = new ArrayList<>();
+        // written by versions with a single segment
+        if (properties.getProperty("base") != null) {
+            segments.add(properties.getProperty("base"));
+        }
+        for (int i = 0; properties.getProperty("segment." + i) != null; i++) {
+            segments.add(properties.getProperty("segment." + i));
+        }
+        return new IndexManifest(Integer.parseInt(properties.getProperty("count")),
+                Integer.parseInt(properties.getProperty("maxId")),
+                Integer.parseInt(properties.getProperty("dimension")),
+                Long.parseLong(properties.getProperty("checksum", "0")), segments,
+                VectorIndexType.valueOf(properties.getProperty("engine", VectorIndexType.HNSW.name())),
+                Boolean.parseBoolean(properties.getProperty("normalized")),
+                Integer.parseInt(properties.getProperty("indexDimension", "0")), fileStamps(properties),
+                segmentStamps(properties, segments.size()));
+    }
+
+    private static Map<String, String> fileStamps(Properties properties) {
+        Map<String, String> stamps = new HashMap<>();
+        for (String suffix : FILE_SUFFIXES) {
+            String stamp = properties.getProperty("stamp" + suffix);
+            if (stamp != null) {
+                stamps.put(suffix, stamp);
+            }
+        }
+        return stamps;
+    }
+
+    private static List<String> segmentStamps(Properties properties, int count) {
+        List<String> stamps = new ArrayList<>();
+        for (int i = 0; i < count && properties.getProperty("segment." + i + ".stamp") != null; i++) {
+            stamps.add(properties.getProperty("segment." + i + ".stamp"));
+        }
+        return stamps;
+    }
+
+    /**
+     * Written last, so an index without a manifest is treated as incomplete. The index files and segments are
+     * stamped as they are on disk now.
+     */
+    void write(Path path) throws IOException {
+        fileStamps = new HashMap<>();
+        for (String suffix : FILE_SUFFIXES) {
+            if (Files.exists(sibling(path, suffix))) {
+                fileStamps.put(suffix, stamp(sibling(path, suffix)));
+            }
+        }
+        segmentStamps = new ArrayList<>();
+        for (String segment : segments) {
+            segmentStamps.add(stamp(Path.of(segment)));
+        }
+        Properties properties = new Properties();
+        properties.setProperty("count", String.valueOf(count));
+        properties.setProperty("maxId", String.valueOf(maxId));
+        properties.setProperty("dimension", String.valueOf(dimension));
+        properties.setProperty("engine", engine.name());
+        properties.setProperty("normalized", String.valueOf(normalized));
+        properties.setProperty("indexDimension", String.valueOf(indexDimension));
+        fileStamps.forEach((suffix, stamp) -> properties.setProperty("stamp" + suffix, stamp));
+        for (int i = 0; i < segments.size(); i++) {
+            properties.setProperty("segment." + i, segments.get(i));
+            properties.setProperty("segment." + i + ".stamp", segmentStamps.get(i));
+        }
+        Path manifestPath = sibling(path, MANIFEST_SUFFIX);
+        Path tmpPath = sibling(path, MANIFEST_SUFFIX + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmpPath)) {
+            properties.store(out, "LingKB vector index");
+        }
+        Files.move(tmpPath, manifestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Remove the segment files listed by a manifest that has been replaced unless one of the manifests at
+     * {@code paths} still lists them. A segment outlives the generations using it while a manifest lists it, so
+     * the backup index can still be opened after the segment was merged away.
+     */
+    public static void removeSegments(IndexManifest replaced, Path... paths) throws IOException {
+        if (replaced == null) {
+            return;
+        }
+        Set<String> listed = new HashSet<>();
+        for (Path path : paths) {
+            IndexManifest manifest = path == null ? null : read(path);
+            if (manifest != null) {
+                listed.addAll(manifest.segments);
+            }
+        }
+        for (String segment : replaced.segments) {
+            if (!listed.contains(segment)) {
+                Files.deleteIfExists(Path.of(segment));
+                Files.deleteIfExists(sibling(Path.of(segment), DiskSegment.PQ_SUFFIX));
+            }
+        }
+    }
+
+    /**
+     * Move the index at {@code from} with its side files and manifest to {@code to}
+     */
+    public static void move(Path from, Path to) throws IOException {
+        Files.deleteIfExists(sibling(to, MANIFEST_SUFFIX));
+        for (String suffix : FILE_SUFFIXES) {
+            Path source = sibling(from, suffix);
+            if (Files.exists(source)) {
+                Files.move(source, sibling(to, suffix), StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.deleteIfExists(sibling(to, suffix));
+            }
+        }
+        Path manifest = sibling(from, MANIFEST_SUFFIX);
+        if (Files.exists(manifest)) {
+            Files.move(manifest, sibling(to, MANIFEST_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
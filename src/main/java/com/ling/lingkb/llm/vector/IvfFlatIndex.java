@@ -0,0 +1,322 @@
+package com.ling.lingkb.llm.vector;
+
+import static io.github.jbellis.jvector.vector.VectorSimilarityFunction.DOT_PRODUCT;
+import io.github.jbellis.jvector.graph.SearchResult;
+import io.github.jbellis.jvector.util.Bits;
+import io.github.jbellis.jvector.util.PhysicalCoreExecutor;
+import io.github.jbellis.jvector.vector.VectorUtil;
+import io.github.jbellis.jvector.vector.VectorizationProvider;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import io.github.jbellis.jvector.vector.types.VectorTypeSupport;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+/**
+ * Inverted file index: the vectors are clustered around about {@code sqrt(n)} centroids by spherical k-means over
+ * a sample, every vector is listed under its closest centroid and a query scans the lists of its closest
+ * centroids exactly. Building takes a few passes over the sample instead of a graph insertion per vector.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/18
+ */
+class IvfFlatIndex implements VectorIndex {
+    private static final VectorTypeSupport VTS = VectorizationProvider.getInstance().getVectorTypeSupport();
+    private static final int ITERATIONS = 8;
+    private static final int SAMPLES_PER_CENTROID = 32;
+    private static final int MAX_CENTROIDS = 4096;
+    private static final int BLOCK_SIZE = 1024;
+    /**
+     * Share of the lists scanned per query, at least {@link #MIN_PROBES} of them
+     */
+    private static final double PROBE_RATIO = 0.05;
+    private static final int MIN_PROBES = 8;
+
+    private final MutableVectorValues vectors;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<VectorFloat<?>> centroids = new ArrayList<>();
+    private final List<int[]> lists = new ArrayList<>();
+    private int[] listSizes = new int[0];
+    private int[] assignments = new int[0];
+
+    IvfFlatIndex(MutableVectorValues vectors) {
+        this.vectors = vectors;
+    }
+
+    static IvfFlatIndex load(Path path, MutableVectorValues vectors, int size) throws IOException {
+        FlatIndex.readVectors(path, vectors, size);
+        IvfFlatIndex index = new IvfFlatIndex(vectors);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(IndexManifest.sibling(path, IndexManifest.IVF_SUFFIX))))) {
+            int centroidCount = in.readInt();
+            int dimension = in.readInt();
+            if (dimension != vectors.dimension()) {
+                throw new IOException("Index " + path + " does not match its manifest");
+            }
+            for (int c = 0; c < centroidCount; c++) {
+                float[] centroid = new float[dimension];
+                for (int i = 0; i < dimension; i++) {
+                    centroid[i] = in.readFloat();
+                }
+                index.addCentroid(VTS.createFloatVector(centroid));
+            }
+            if (in.readInt() != size) {
+                throw new IOException("Index " + path + " does not match its manifest");
+            }
+            for (int ordinal = 0; ordinal < size; ordinal++) {
+                int centroid = in.readInt();
+                if (centroid >= 0) {
+                    index.list(ordinal, centroid);
+                } else {
+                    index.assign(ordinal, -1);
+                }
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public VectorIndexType type() {
+        return VectorIndexType.IVF_FLAT;
+    }
+
+    @Override
+    public void build() {
+        int size = vectors.size();
+        if (size == 0) {
+            return;
+        }
+        int centroidCount = (int) Math.min(MAX_CENTROIDS, Math.max(1, Math.round(Math.sqrt(size))));
+        int[] sample = sample(size, centroidCount * SAMPLES_PER_CENTROID);
+        List<VectorFloat<?>> trained = train(sample, Math.min(centroidCount, sample.length));
+        lock.writeLock().lock();
+        try {
+            trained.forEach(this::addCentroid);
+            int[] nearest = nearest(trained, IntStream.range(0, size).toArray());
+            for (int ordinal = 0; ordinal < size; ordinal++) {
+                list(ordinal, nearest[ordinal]);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Spherical k-means: vectors and centroids are both of unit length and compared by dot product, every centroid
+     * is the normalized mean of its members
+     */
+    private List<VectorFloat<?>> train(int[] sample, int centroidCount) {
+        Random random = new Random(42);
+        MutableVectorValues view = vectors.copy();
+        List<VectorFloat<?>> trained = new ArrayList<>();
+        for (int c = 0; c < centroidCount; c++) {
+            trained.add(normalized(view.getVector(sample[random.nextInt(sample.length)])));
+        }
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            List<VectorFloat<?>> current = trained;
+            int[] nearest = nearest(current, sample);
+            List<VectorFloat<?>> sums = new ArrayList<>();
+            int[] counts = new int[centroidCount];
+            for (int c = 0; c < centroidCount; c++) {
+                sums.add(VTS.createFloatVector(vectors.dimension()));
+            }
+            for (int i = 0; i < sample.length; i++) {
+                VectorUtil.addInPlace(sums.get(nearest[i]), normalized(view.getVector(sample[i])));
+                counts[nearest[i]]++;
+            }
+            trained = new ArrayList<>();
+            for (int c = 0; c < centroidCount; c++) {
+                // an empty cluster is seeded again with a random sample
+                trained.add(counts[c] == 0 ? normalized(view.getVector(sample[random.nextInt(sample.length)])) :
+                        normalized(sums.get(c)));
+            }
+        }
+        return trained;
+    }
+
+    private static int[] sample(int size, int count) {
+        if (size <= count) {
+            return IntStream.range(0, size).toArray();
+        }
+        double stride = (double) size / count;
+        return IntStream.range(0, count).map(i -> (int) (i * stride)).toArray();
+    }
+
+    /**
+     * The closest centroid of every ordinal, computed in parallel blocks each reading through its own view
+     */
+    private int[] nearest(List<VectorFloat<?>> centroids, int[] ordinals) {
+        int[] nearest = new int[ordinals.length];
+        int blocks = (ordinals.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        PhysicalCoreExecutor.pool().submit(() -> IntStream.range(0, blocks).parallel().forEach(block -> {
+            MutableVectorValues view = vectors.copy();
+            for (int i = block * BLOCK_SIZE; i < Math.min(ordinals.length, (block + 1) * BLOCK_SIZE); i++) {
+                nearest[i] = nearest(centroids, view.getVector(ordinals[i]));
+            }
+        })).join();
+        return nearest;
+    }
+
+    private static VectorFloat<?> normalized(VectorFloat<?> vector) {
+        VectorFloat<?> copy = vector.copy();
+        if (VectorUtil.dotProduct(copy, copy) > 0) {
+            VectorUtil.l2normalize(copy);
+        }
+        return copy;
+    }
+
+    private static int nearest(List<VectorFloat<?>> centroids, VectorFloat<?> vector) {
+        int best = 0;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int c = 0; c < centroids.size(); c++) {
+            float score = DOT_PRODUCT.compare(vector, centroids.get(c));
+            if (score > bestScore) {
+                bestScore = score;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    private void addCentroid(VectorFloat<?> centroid) {
+        centroids.add(centroid);
+        lists.add(new int[16]);
+        listSizes = Arrays.copyOf(listSizes, centroids.size());
+    }
+
+    private void list(int ordinal, int centroid) {
+        int[] list = lists.get(centroid);
+        if (listSizes[centroid] == list.length) {
+            list = Arrays.copyOf(list, list.length * 2);
+            lists.set(centroid, list);
+        }
+        list[listSizes[centroid]++] = ordinal;
+        assign(ordinal, centroid);
+    }
+
+    private void assign(int ordinal, int centroid) {
+        if (ordinal >= assignments.length) {
+            int length = assignments.length;
+            assignments = Arrays.copyOf(assignments, Math.max(Math.max(length * 2, 16), ordinal + 1));
+            Arrays.fill(assignments, length, assignments.length, -1);
+        }
+        assignments[ordinal] = centroid;
+    }
+
+    @Override
+    public void add(int ordinal) {
+        VectorFloat<?> vector = vectors.copy().getVector(ordinal);
+        lock.writeLock().lock();
+        try {
+            if (centroids.isEmpty()) {
+                addCentroid(normalized(vector));
+            }
+            list(ordinal, nearest(centroids, vector));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(int ordinal) {
+        lock.writeLock().lock();
+        try {
+            int centroid = ordinal < assignments.length ? assignments[ordinal] : -1;
+            if (centroid < 0) {
+                return;
+            }
+            int[] list = lists.get(centroid);
+            for (int i = 0; i < listSizes[centroid]; i++) {
+                if (list[i] == ordinal) {
+                    list[i] = list[--listSizes[centroid]];
+                    break;
+                }
+            }
+            assignments[ordinal] = -1;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public SearchResult search(VectorFloat<?> query, int topK, Bits acceptOrds) {
+        MutableVectorValues view = vectors.copy();
+        FlatIndex.TopK top = new FlatIndex.TopK(topK);
+        int visited = 0;
+        lock.readLock().lock();
+        try {
+            int probes = Math.min(centroids.size(), Math.max(MIN_PROBES, (int) (centroids.size() * PROBE_RATIO)));
+            FlatIndex.TopK closest = new FlatIndex.TopK(probes);
+            for (int c = 0; c < centroids.size(); c++) {
+                closest.offer(c, DOT_PRODUCT.compare(query, centroids.get(c)));
+            }
+            for (SearchResult.NodeScore centroid : closest.result(centroids.size()).getNodes()) {
+                int[] list = lists.get(centroid.node);
+                for (int i = 0; i < listSizes[centroid.node]; i++) {
+                    if (acceptOrds.get(list[i])) {
+                        top.offer(list[i], DOT_PRODUCT.compare(query, view.getVector(list[i])));
+                        visited++;
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return top.result(visited);
+    }
+
+    @Override
+    public void write(Path path) throws IOException {
+        lock.readLock().lock();
+        try {
+            int size = vectors.size();
+            FlatIndex.writeVectors(path, vectors, size);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(IndexManifest.sibling(path, IndexManifest.IVF_SUFFIX))))) {
+                out.writeInt(centroids.size());
+                out.writeInt(vectors.dimension());
+                for (VectorFloat<?> centroid : centroids) {
+                    for (int i = 0; i < centroid.length(); i++) {
+                        out.writeFloat(centroid.get(i));
+                    }
+                }
+                out.writeInt(size);
+                for (int ordinal = 0; ordinal < size; ordinal++) {
+                    out.writeInt(ordinal < assignments.length ? assignments[ordinal] : -1);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long bytesUsed() {
+        lock.readLock().lock();
+        try {
+            long bytes = (long) centroids.size() * vectors.dimension() * Float.BYTES + 4L * assignments.length;
+            for (int[] list : lists) {
+                bytes += 4L * list.length;
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,219 @@
+package com.ling.lingkb.llm.vector;
+
+import io.github.jbellis.jvector.graph.SearchResult;
+import io.github.jbellis.jvector.util.Bits;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An inverted index over the sentences of a workspace scored with BM25, used next to the vector index so keyword
+ * questions such as error codes or product names find the sentences that literally contain them.
+ * <p>
+ * The postings of a term are one byte array of variable length integers: the gap to the previous node id followed
+ * by the term frequency. Node ids are handed out in ascending order, so sentences are only ever appended at the
+ * end of a posting list. Removed nodes are skipped while scoring and dropped when the index is loaded again.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/19
+ */
+public class LexicalIndex {
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Postings> postings = new HashMap<>();
+    /**
+     * The number of terms of every node, 0 for an absent node
+     */
+    private int[] lengths = new int[0];
+    private final BitSet removed = new BitSet();
+    private int count;
+    private long totalLength;
+
+    /**
+     * Index the terms of a node, node ids are expected in ascending order
+     */
+    public void add(int nodeId, List<String> terms) {
+        if (terms.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> frequencies = frequencies(terms);
+        lock.writeLock().lock();
+        try {
+            if (nodeId >= lengths.length) {
+                lengths = Arrays.copyOf(lengths, Math.max(Math.max(lengths.length * 2, 16), nodeId + 1));
+            }
+            lengths[nodeId] = terms.size();
+            removed.clear(nodeId);
+            count++;
+            totalLength += terms.size();
+            frequencies.forEach((term, frequency) -> postings.computeIfAbsent(term, t -> new Postings())
+                    .add(nodeId, frequency));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int nodeId) {
+        lock.writeLock().lock();
+        try {
+            if (nodeId < lengths.length && lengths[nodeId] > 0 && !removed.get(nodeId)) {
+                removed.set(nodeId);
+                count--;
+                totalLength -= lengths[nodeId];
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The best {@code topK} nodes containing any of the terms in descending BM25 score order,
+     * {@link SearchResult.NodeScore#node} holds the node id
+     */
+    public SearchResult.NodeScore[] search(List<String> terms, int topK) {
+        return search(terms, topK, Bits.ALL);
+    }
+
+    /**
+     * @param accept the node ids that may be found
+     */
+    public SearchResult.NodeScore[] search(List<String> terms, int topK, Bits accept) {
+        lock.readLock().lock();
+        try {
+            if (count == 0) {
+                return new SearchResult.NodeScore[0];
+            }
+            float averageLength = (float) totalLength / count;
+            Map<Integer, Float> scores = new HashMap<>();
+            for (String term : frequencies(terms).keySet()) {
+                Postings list = postings.get(term);
+                if (list == null) {
+                    continue;
+                }
+                float idf = (float) Math.log(1 + (count - list.count + 0.5) / (list.count + 0.5));
+                list.forEach((nodeId, frequency) -> {
+                    if (!removed.get(nodeId) && accept.get(nodeId)) {
+                        float norm = K1 * (1 - B + B * lengths[nodeId] / averageLength);
+                        scores.merge(nodeId, idf * frequency * (K1 + 1) / (frequency + norm), Float::sum);
+                    }
+                });
+            }
+            FlatIndex.TopK top = new FlatIndex.TopK(topK);
+            scores.forEach(top::offer);
+            return top.result(scores.size()).getNodes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Whether the node contains every one of the terms
+     */
+    public boolean containsAll(int nodeId, List<String> terms) {
+        lock.readLock().lock();
+        try {
+            for (String term : terms) {
+                Postings list = postings.get(term);
+                if (list == null || !list.contains(nodeId)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long bytesUsed() {
+        lock.readLock().lock();
+        try {
+            long bytes = 4L * lengths.length;
+            for (Map.Entry<String, Postings> entry : postings.entrySet()) {
+                bytes += 2L * entry.getKey().length() + entry.getValue().bytes.length + 64;
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static Map<String, Integer> frequencies(List<String> terms) {
+        Map<String, Integer> frequencies = new LinkedHashMap<>();
+        for (String term : terms) {
+            frequencies.merge(term, 1, Integer::sum);
+        }
+        return frequencies;
+    }
+
+    private interface PostingConsumer {
+        void accept(int nodeId, int frequency);
+    }
+
+    /**
+     * Delta and variable length encoded node ids with their term frequencies
+     */
+    private static class Postings {
+        private byte[] bytes = new byte[8];
+        private int size;
+        private int count;
+        private int lastNodeId;
+
+        void add(int nodeId, int frequency) {
+            if (size + 10 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            writeVarInt(nodeId - lastNodeId);
+            writeVarInt(frequency);
+            lastNodeId = nodeId;
+            count++;
+        }
+
+        void forEach(PostingConsumer consumer) {
+            int position = 0;
+            int nodeId = 0;
+            while (position < size) {
+                int gap = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = bytes[position++];
+                    gap |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                int frequency = 0;
+                shift = 0;
+                do {
+                    b = bytes[position++];
+                    frequency |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                nodeId += gap;
+                consumer.accept(nodeId, frequency);
+            }
+        }
+
+        boolean contains(int nodeId) {
+            boolean[] found = {false};
+            if (nodeId <= lastNodeId) {
+                forEach((id, frequency) -> found[0] |= id == nodeId);
+            }
+            return found[0];
+        }
+
+        private void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+    }
+}
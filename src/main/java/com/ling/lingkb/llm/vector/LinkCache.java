@@ -0,0 +1,65 @@
+package com.ling.lingkb.llm.vector;
+
+import com.ling.lingkb.entity.LingDocumentLink;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used links by id, bounded by the characters of their content so a few large base64 images
+ * cannot push the heap around.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/13
+ */
+public class LinkCache {
+    private final long maxChars;
+    private final LinkedHashMap<Integer, LingDocumentLink> links = new LinkedHashMap<>(64, 0.75f, true);
+    private long chars;
+
+    public LinkCache(long maxChars) {
+        this.maxChars = maxChars;
+    }
+
+    public synchronized LingDocumentLink get(int id) {
+        return links.get(id);
+    }
+
+    public synchronized void put(LingDocumentLink link) {
+        long size = charsOf(link);
+        if (size > maxChars) {
+            return;
+        }
+        LingDocumentLink previous = links.put(link.getId(), link);
+        if (previous != null) {
+            chars -= charsOf(previous);
+        }
+        chars += size;
+        Iterator<Map.Entry<Integer, LingDocumentLink>> iterator = links.entrySet().iterator();
+        while (chars > maxChars && iterator.hasNext()) {
+            chars -= charsOf(iterator.next().getValue());
+            iterator.remove();
+        }
+    }
+
+    public synchronized void remove(int id) {
+        LingDocumentLink previous = links.remove(id);
+        if (previous != null) {
+            chars -= charsOf(previous);
+        }
+    }
+
+    public synchronized void clear() {
+        links.clear();
+        chars = 0;
+    }
+
+    private static long charsOf(LingDocumentLink link) {
+        long size = 0;
+        for (String value : new String[]{link.getContent(), link.getContentAssistant(), link.getDescText()}) {
+            size += value == null ? 0 : value.length();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,136 @@
+package com.ling.lingkb.llm.vector;
+
+import io.github.jbellis.jvector.graph.RandomAccessVectorValues;
+import io.github.jbellis.jvector.vector.VectorizationProvider;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import io.github.jbellis.jvector.vector.types.VectorTypeSupport;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read only vector values backed by a memory mapped file of little-endian floats, so the vectors of a large
+ * corpus live in the page cache instead of on the heap. The file is mapped in chunks as one mapping cannot
+ * exceed 2 GB.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/14
+ */
+public class MappedVectorValues implements RandomAccessVectorValues {
+    private static final VectorTypeSupport VTS = VectorizationProvider.getInstance().getVectorTypeSupport();
+
+    private final int dimension;
+    private final int size;
+    private final int vectorsPerChunk;
+    private final FloatBuffer[] chunks;
+
+    private MappedVectorValues(int dimension, int size, int vectorsPerChunk, FloatBuffer[] chunks) {
+        this.dimension = dimension;
+        this.size = size;
+        this.vectorsPerChunk = vectorsPerChunk;
+        this.chunks = chunks;
+    }
+
+    /**
+     * Map the vectors written to {@code path} by a {@link Writer}
+     */
+    public static MappedVectorValues open(Path path, int dimension) throws IOException {
+        long vectorBytes = (long) dimension * Float.BYTES;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            int size = (int) (channel.size() / vectorBytes);
+            int vectorsPerChunk = (int) (Integer.MAX_VALUE / vectorBytes);
+            FloatBuffer[] chunks = new FloatBuffer[(size + vectorsPerChunk - 1) / vectorsPerChunk];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = (long) i * vectorsPerChunk * vectorBytes;
+                long length = Math.min(vectorsPerChunk, size - (long) i * vectorsPerChunk) * vectorBytes;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length).order(ByteOrder.LITTLE_ENDIAN)
+                        .asFloatBuffer();
+            }
+            return new MappedVectorValues(dimension, size, vectorsPerChunk, chunks);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public VectorFloat<?> getVector(int i) {
+        FloatBuffer chunk = chunks[i / vectorsPerChunk];
+        int offset = (i % vectorsPerChunk) * dimension;
+        float[] vector = new float[dimension];
+        for (int j = 0; j < dimension; j++) {
+            vector[j] = chunk.get(offset + j);
+        }
+        return VTS.createFloatVector(vector);
+    }
+
+    @Override
+    public boolean isValueShared() {
+        return false;
+    }
+
+    @Override
+    public RandomAccessVectorValues copy() {
+        return this;
+    }
+
+    /**
+     * Appends vectors to the file to be mapped
+     */
+    public static class Writer implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final int dimension;
+        private int size;
+
+        public Writer(Path path, int dimension) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.buffer = ByteBuffer.allocate(dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            this.dimension = dimension;
+        }
+
+        public int add(float[] vector) throws IOException {
+            if (vector.length != dimension) {
+                throw new IllegalArgumentException(
+                        String.format("Vector dimension mismatch. Expected %d, got %d", dimension, vector.length));
+            }
+            buffer.clear();
+            buffer.asFloatBuffer().put(vector);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            return size++;
+        }
+
+        public int add(VectorFloat<?> vector) throws IOException {
+            float[] values = new float[vector.length()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = vector.get(i);
+            }
+            return add(values);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.ling.lingkb.llm.vector;
+
+import com.ling.lingkb.entity.SearchFilter;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * The nodes of a workspace grouped by document, source type and creation day, each group a {@link NodeBitmap}
+ * of {@link NodeType#key}s. A search filter is turned into one accept set by combining the groups it names.
+ * <p>
+ * A removed sentence keeps its bit until the workspace is loaded again, the tombstones of the vector index and
+ * the lexical index hide it already. Removing a document drops its nodes from every group.
+ * <p>
+ * The union of the days of a date range is kept for the next filter naming the same range, until a node of one of
+ * its days is added or removed.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/19
+ */
+public class MetadataIndex {
+    private static final int DAY_RANGES = 64;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Document> documents = new HashMap<>();
+    private final Map<String, NodeBitmap> sources = new HashMap<>();
+    /**
+     * Indexed by the epoch day of the creation date of the document
+     */
+    private final TreeMap<Long, NodeBitmap> days = new TreeMap<>();
+    /**
+     * The least recently used unions of {@link #days} by their first and last day
+     */
+    private final LinkedHashMap<List<Long>, NodeBitmap> dayRanges = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Register a document before its nodes are added
+     *
+     * @param sourceType   where the document came from, null if unknown so no source type filter matches it
+     * @param creationDate creation date in epoch milliseconds, 0 if unknown
+     */
+    public void document(String docId, String sourceType, long creationDate) {
+        lock.writeLock().lock();
+        try {
+            documents.computeIfAbsent(docId, id -> new Document(normalize(sourceType), day(creationDate)));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean contains(String docId) {
+        lock.readLock().lock();
+        try {
+            return documents.containsKey(docId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Add a node of a registered document, nodes of unknown documents are ignored
+     */
+    public void add(String docId, NodeType type, int id) {
+        int key = type.key(id);
+        lock.writeLock().lock();
+        try {
+            Document document = documents.get(docId);
+            if (document == null) {
+                return;
+            }
+            document.nodes.add(key);
+            if (document.sourceType != null) {
+                sources.computeIfAbsent(document.sourceType, s -> new NodeBitmap()).add(key);
+            }
+            days.computeIfAbsent(document.day, d -> new NodeBitmap()).add(key);
+            invalidate(document.day);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeDocument(String docId) {
+        lock.writeLock().lock();
+        try {
+            Document document = documents.remove(docId);
+            if (document == null) {
+                return;
+            }
+            NodeBitmap source = document.sourceType == null ? null : sources.get(document.sourceType);
+            NodeBitmap day = days.get(document.day);
+            document.nodes.forEach(key -> {
+                if (source != null) {
+                    source.remove(key);
+                }
+                day.remove(key);
+            });
+            invalidate(document.day);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The keys of the nodes matching every condition of the filter, any value of a condition may match
+     *
+     * @return null if the filter has no condition, so everything is accepted
+     */
+    public NodeBitmap accept(SearchFilter filter) {
+        if (filter == null || filter.isEmpty()) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            List<NodeBitmap> conditions = new ArrayList<>();
+            if (filter.getDocIds() != null && !filter.getDocIds().isEmpty()) {
+                conditions.add(NodeBitmap.or(filter.getDocIds().stream().map(documents::get).filter(Objects::nonNull)
+                        .map(document -> document.nodes).collect(Collectors.toList())));
+            }
+            if (filter.getSourceTypes() != null && !filter.getSourceTypes().isEmpty()) {
+                conditions.add(NodeBitmap.or(filter.getSourceTypes().stream().map(MetadataIndex::normalize)
+                        .map(sources::get).filter(Objects::nonNull).collect(Collectors.toList())));
+            }
+            if (filter.getCreatedFrom() != null || filter.getCreatedTo() != null) {
+                long from = filter.getCreatedFrom() == null ? Long.MIN_VALUE : day(filter.getCreatedFrom());
+                long to = filter.getCreatedTo() == null ? Long.MAX_VALUE : day(filter.getCreatedTo());
+                conditions.add(from > to ? new NodeBitmap() : dayRange(from, to));
+            }
+            // intersect the smallest sets first
+            conditions.sort((a, b) -> Integer.compare(a.cardinality(), b.cardinality()));
+            NodeBitmap accept = conditions.get(0);
+            for (int i = 1; i < conditions.size() && !accept.isEmpty(); i++) {
+                accept = accept.and(conditions.get(i));
+            }
+            return accept;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The nodes created from the first to the last day, the caller holds the read lock
+     */
+    private NodeBitmap dayRange(long from, long to) {
+        List<Long> range = List.of(from, to);
+        synchronized (dayRanges) {
+            NodeBitmap union = dayRanges.get(range);
+            if (union != null) {
+                return union;
+            }
+        }
+        NodeBitmap union = NodeBitmap.or(days.subMap(from, true, to, true).values());
+        synchronized (dayRanges) {
+            dayRanges.put(range, union);
+            if (dayRanges.size() > DAY_RANGES) {
+                dayRanges.remove(dayRanges.keySet().iterator().next());
+            }
+        }
+        return union;
+    }
+
+    /**
+     * Drop the unions of the ranges covering the day, the caller holds the write lock
+     */
+    private void invalidate(long day) {
+        synchronized (dayRanges) {
+            dayRanges.keySet().removeIf(range -> range.get(0) <= day && day <= range.get(1));
+        }
+    }
+
+    public long bytesUsed() {
+        lock.readLock().lock();
+        try {
+            long bytes = 0;
+            for (Map.Entry<String, Document> entry : documents.entrySet()) {
+                bytes += 2L * entry.getKey().length() + entry.getValue().nodes.bytesUsed() + 64;
+            }
+            for (NodeBitmap bitmap : sources.values()) {
+                bytes += bitmap.bytesUsed();
+            }
+            for (NodeBitmap bitmap : days.values()) {
+                bytes += bitmap.bytesUsed();
+            }
+            synchronized (dayRanges) {
+                for (NodeBitmap bitmap : dayRanges.values()) {
+                    bytes += bitmap.bytesUsed();
+                }
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static String normalize(String sourceType) {
+        return sourceType == null ? null : sourceType.toLowerCase();
+    }
+
+    private static long day(long epochMillis) {
+        return Instant.ofEpochMilli(epochMillis).atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+    }
+
+    private static class Document {
+        private final String sourceType;
+        private final long day;
+        private final NodeBitmap nodes = new NodeBitmap();
+
+        Document(String sourceType, long day) {
+            this.sourceType = sourceType;
+            this.day = day;
+        }
+    }
+}
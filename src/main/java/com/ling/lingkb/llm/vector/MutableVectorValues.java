@@ -0,0 +1,168 @@
+package com.ling.lingkb.llm.vector;
+
+import io.github.jbellis.jvector.graph.RandomAccessVectorValues;
+import io.github.jbellis.jvector.vector.VectorizationProvider;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import io.github.jbellis.jvector.vector.types.VectorTypeSupport;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Append-only vector values, readers may run concurrently with a single appender.
+ * <p>
+ * The vectors are stored off heap with a fixed stride of {@code dimension * 4} bytes in direct buffers, growing adds
+ * a chunk so nothing is ever copied and the collector never scans them. The first chunk holds
+ * {@value #FIRST_CHUNK_BYTES} bytes and every further one twice as many up to {@value #MAX_CHUNK_BYTES} bytes, so a
+ * small generation does not reserve a large buffer.
+ * <p>
+ * Reads are not zero copy: {@link #getVector(int)} copies the vector into an on-heap scratch vector owned by the
+ * instance, the similarity functions of jvector only take the vector types of its own provider and no view on a
+ * direct buffer. Values are shared, so every concurrent reader works on its own view taken with {@link #copy()}.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/7/15
+ */
+public class MutableVectorValues implements RandomAccessVectorValues {
+    private static final VectorTypeSupport VTS = VectorizationProvider.getInstance().getVectorTypeSupport();
+    private static final int FIRST_CHUNK_BYTES = 1 << 16;
+    private static final int MAX_CHUNK_BYTES = 1 << 26;
+    /**
+     * How often the chunk size doubles before it reaches its maximum
+     */
+    private static final int DOUBLINGS = Integer.numberOfTrailingZeros(MAX_CHUNK_BYTES / FIRST_CHUNK_BYTES);
+
+    private final Storage storage;
+    private final float[] scratch;
+    private final VectorFloat<?> scratchVector;
+
+    public MutableVectorValues(int dimension) {
+        this(new Storage(dimension));
+    }
+
+    private MutableVectorValues(Storage storage) {
+        this.storage = storage;
+        this.scratch = new float[storage.dimension];
+        this.scratchVector = VTS.createFloatVector(scratch);
+    }
+
+    public int add(float[] vector) {
+        return storage.add(vector);
+    }
+
+    public int add(VectorFloat<?> vector) {
+        float[] values = new float[vector.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = vector.get(i);
+        }
+        return storage.add(values);
+    }
+
+    @Override
+    public int size() {
+        return storage.size;
+    }
+
+    @Override
+    public int dimension() {
+        return storage.dimension;
+    }
+
+    /**
+     * The vector at {@code i}, only valid until the next call on this instance
+     */
+    @Override
+    public VectorFloat<?> getVector(int i) {
+        storage.read(i, scratch);
+        return scratchVector;
+    }
+
+    /**
+     * The bytes of the vectors added so far, the unfilled rest of the last chunk is not counted
+     */
+    public long bytesUsed() {
+        return (long) storage.size * storage.dimension * Float.BYTES;
+    }
+
+    @Override
+    public boolean isValueShared() {
+        return true;
+    }
+
+    /**
+     * A view on the same storage with its own scratch vector, vectors appended later are visible through it
+     */
+    @Override
+    public MutableVectorValues copy() {
+        return new MutableVectorValues(storage);
+    }
+
+    private static class Storage {
+        private final int dimension;
+        /**
+         * The vectors of the first chunk, chunk {@code k} holds {@code first << min(k, DOUBLINGS)}
+         */
+        private final int first;
+        /**
+         * The vectors of the chunks that still double in size
+         */
+        private final int growing;
+        private volatile FloatBuffer[] chunks = new FloatBuffer[0];
+        private volatile int size;
+
+        Storage(int dimension) {
+            this.dimension = dimension;
+            this.first = Math.max(1, FIRST_CHUNK_BYTES / (dimension * Float.BYTES));
+            this.growing = first * ((1 << DOUBLINGS) - 1);
+        }
+
+        synchronized int add(float[] vector) {
+            if (vector.length != dimension) {
+                throw new IllegalArgumentException(
+                        String.format("Vector dimension mismatch. Expected %d, got %d", dimension, vector.length));
+            }
+            FloatBuffer[] current = chunks;
+            int k = chunk(size);
+            if (k == current.length) {
+                current = Arrays.copyOf(current, k + 1);
+                current[k] = ByteBuffer.allocateDirect(capacity(k) * dimension * Float.BYTES)
+                        .order(ByteOrder.nativeOrder()).asFloatBuffer();
+                chunks = current;
+            }
+            FloatBuffer chunk = current[k].duplicate();
+            chunk.position((size - start(k)) * dimension);
+            chunk.put(vector);
+            return size++;
+        }
+
+        void read(int i, float[] into) {
+            int k = chunk(i);
+            FloatBuffer chunk = chunks[k].duplicate();
+            chunk.position((i - start(k)) * dimension);
+            chunk.get(into);
+        }
+
+        /**
+         * The chunk holding vector {@code i}: chunk {@code k < DOUBLINGS} starts at {@code first * (2^k - 1)}
+         */
+        private int chunk(int i) {
+            if (i < growing) {
+                return 31 - Integer.numberOfLeadingZeros(i / first + 1);
+            }
+            return DOUBLINGS + (i - growing) / (first << DOUBLINGS);
+        }
+
+        private int start(int k) {
+            if (k <= DOUBLINGS) {
+                return first * ((1 << k) - 1);
+            }
+            return growing + (k - DOUBLINGS) * (first << DOUBLINGS);
+        }
+
+        private int capacity(int k) {
+            return first << Math.min(k, DOUBLINGS);
+        }
+    }
+}
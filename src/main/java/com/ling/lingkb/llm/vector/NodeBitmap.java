@@ -0,0 +1,270 @@
+package com.ling.lingkb.llm.vector;
+
+import io.github.jbellis.jvector.util.Bits;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.IntConsumer;
+
+/**
+ * A compressed set of node keys in the layout of a roaring bitmap: keys are split by their upper 16 bits into
+ * containers, a container holds a sorted array of the lower 16 bits while it has at most {@value #ARRAY_MAX}
+ * entries and a plain 65536 bit bitmap beyond that. The sentences of a document get consecutive node ids, so the
+ * set of a document is one small array most of the time.
+ * <p>
+ * Not thread safe, the bitmaps handed to searches are built per query and only read afterwards.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/19
+ */
+public class NodeBitmap implements Bits {
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1 << 10;
+
+    private char[] keys = new char[0];
+    private Container[] containers = new Container[0];
+    private int size;
+
+    public void add(int key) {
+        char high = (char) (key >>> 16);
+        int i = Arrays.binarySearch(keys, 0, size, high);
+        if (i < 0) {
+            i = -i - 1;
+            insert(i, high, new Container());
+        }
+        containers[i].add((char) key);
+    }
+
+    public void remove(int key) {
+        int i = Arrays.binarySearch(keys, 0, size, (char) (key >>> 16));
+        if (i >= 0) {
+            containers[i].remove((char) key);
+            if (containers[i].cardinality == 0) {
+                System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+                System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+                containers[--size] = null;
+            }
+        }
+    }
+
+    @Override
+    public boolean get(int key) {
+        int i = Arrays.binarySearch(keys, 0, size, (char) (key >>> 16));
+        return i >= 0 && containers[i].contains((char) key);
+    }
+
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality;
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void forEach(IntConsumer consumer) {
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << 16, consumer);
+        }
+    }
+
+    public long bytesUsed() {
+        long bytes = 2L * keys.length + 8L * containers.length;
+        for (int i = 0; i < size; i++) {
+            Container container = containers[i];
+            bytes += container.words != null ? 8L * WORDS : 2L * container.values.length;
+        }
+        return bytes;
+    }
+
+    /**
+     * A new bitmap holding the keys of any of the bitmaps
+     */
+    public static NodeBitmap or(Collection<NodeBitmap> bitmaps) {
+        NodeBitmap result = new NodeBitmap();
+        for (NodeBitmap bitmap : bitmaps) {
+            for (int j = 0; j < bitmap.size; j++) {
+                int i = Arrays.binarySearch(result.keys, 0, result.size, bitmap.keys[j]);
+                if (i < 0) {
+                    i = -i - 1;
+                    result.insert(i, bitmap.keys[j], new Container());
+                    result.containers[i].words = new long[WORDS];
+                }
+                bitmap.containers[j].orInto(result.containers[i].words);
+            }
+        }
+        for (int i = 0; i < result.size; i++) {
+            result.containers[i].optimize();
+        }
+        return result;
+    }
+
+    /**
+     * A new bitmap holding the keys found in both bitmaps
+     */
+    public NodeBitmap and(NodeBitmap other) {
+        NodeBitmap result = new NodeBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container container = containers[i].and(other.containers[j]);
+                if (container.cardinality > 0) {
+                    result.insert(result.size, keys[i], container);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    private void insert(int i, char high, Container container) {
+        if (size == keys.length) {
+            int length = Math.max(4, size * 2);
+            keys = Arrays.copyOf(keys, length);
+            containers = Arrays.copyOf(containers, length);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(containers, i, containers, i + 1, size - i);
+        keys[i] = high;
+        containers[i] = container;
+        size++;
+    }
+
+    /**
+     * The lower 16 bits of the keys sharing one upper half, either {@code values} or {@code words} is set
+     */
+    private static class Container {
+        private char[] values = new char[4];
+        private long[] words;
+        private int cardinality;
+
+        void add(char low) {
+            if (words != null) {
+                long word = words[low >>> 6];
+                words[low >>> 6] = word | 1L << low;
+                cardinality += word == words[low >>> 6] ? 0 : 1;
+                return;
+            }
+            int i = Arrays.binarySearch(values, 0, cardinality, low);
+            if (i >= 0) {
+                return;
+            }
+            if (cardinality == ARRAY_MAX) {
+                toWords();
+                add(low);
+                return;
+            }
+            i = -i - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, values.length * 2));
+            }
+            System.arraycopy(values, i, values, i + 1, cardinality - i);
+            values[i] = low;
+            cardinality++;
+        }
+
+        void remove(char low) {
+            if (words != null) {
+                long word = words[low >>> 6];
+                words[low >>> 6] = word & ~(1L << low);
+                cardinality -= word == words[low >>> 6] ? 0 : 1;
+                return;
+            }
+            int i = Arrays.binarySearch(values, 0, cardinality, low);
+            if (i >= 0) {
+                System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+                cardinality--;
+            }
+        }
+
+        boolean contains(char low) {
+            if (words != null) {
+                return (words[low >>> 6] & 1L << low) != 0;
+            }
+            return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+        }
+
+        void forEach(int base, IntConsumer consumer) {
+            if (words == null) {
+                for (int i = 0; i < cardinality; i++) {
+                    consumer.accept(base | values[i]);
+                }
+                return;
+            }
+            for (int w = 0; w < WORDS; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    consumer.accept(base | w << 6 | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        void orInto(long[] target) {
+            if (words != null) {
+                for (int w = 0; w < WORDS; w++) {
+                    target[w] |= words[w];
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    target[values[i] >>> 6] |= 1L << values[i];
+                }
+            }
+        }
+
+        Container and(Container other) {
+            Container result = new Container();
+            if (words != null && other.words != null) {
+                result.words = new long[WORDS];
+                for (int w = 0; w < WORDS; w++) {
+                    result.words[w] = words[w] & other.words[w];
+                }
+                result.optimize();
+                return result;
+            }
+            Container array = words == null ? this : other;
+            Container probe = array == this ? other : this;
+            result.values = new char[Math.max(1, array.cardinality)];
+            for (int i = 0; i < array.cardinality; i++) {
+                if (probe.contains(array.values[i])) {
+                    result.values[result.cardinality++] = array.values[i];
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Recount a container filled through {@link #words} and fall back to the array form when it is small
+         */
+        void optimize() {
+            cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+            if (cardinality <= ARRAY_MAX) {
+                char[] array = new char[Math.max(1, cardinality)];
+                int[] count = {0};
+                forEach(0, low -> array[count[0]++] = (char) low);
+                values = array;
+                words = null;
+            }
+        }
+
+        private void toWords() {
+            words = new long[WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            values = null;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.ling.lingkb.llm.vector;
+
+/**
+ * What a node of an index stands for, kept as one byte per ordinal so sentences and links can share a graph.
+ * <p>
+ * Search results report a node by its key: the id of a sentence as is and the id of a link as {@code -1 - id}, so
+ * both fit into the node of a {@link io.github.jbellis.jvector.graph.SearchResult.NodeScore}.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/19
+ */
+public enum NodeType {
+    /**
+     * A sentence of a document, the id is its node id
+     */
+    TEXT,
+    /**
+     * A document link, the id is the primary key of its row
+     */
+    LINK;
+
+    private static final NodeType[] VALUES = values();
+
+    byte tag() {
+        return (byte) ordinal();
+    }
+
+    static NodeType of(byte tag) {
+        return VALUES[tag];
+    }
+
+    public int key(int id) {
+        return this == TEXT ? id : -1 - id;
+    }
+
+    public static NodeType ofKey(int key) {
+        return key >= 0 ? TEXT : LINK;
+    }
+
+    public static int idOf(int key) {
+        return key >= 0 ? key : -1 - key;
+    }
+}
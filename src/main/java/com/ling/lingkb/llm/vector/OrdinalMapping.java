@@ -0,0 +1,216 @@
+package com.ling.lingkb.llm.vector;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Maps the dense graph ordinals of a generation to the stable ids stored in the table and back.
+ * <p>
+ * Ids are assigned once on insert and never reused, deleted rows simply leave holes in the id space.
+ * The graph is always built over dense ordinals, so a rebuild remaps around those holes here instead of
+ * renumbering the table. A removed ordinal keeps its slot with id -1 until the generation is compacted.
+ * <p>
+ * Every ordinal carries the {@link NodeType} of its node in a byte array. Ids are unique per type only, so the
+ * way back from an id to its ordinal is kept per type. A shard of an index sharded by id modulo the shard count only
+ * holds every n-th id, so that way back is indexed by {@code id / stride} and a shard keeps no slots for the ids of
+ * the other shards.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/11
+ */
+public class OrdinalMapping {
+    static final int ABSENT = -1;
+
+    private volatile int[] ids = new int[16];
+    private volatile byte[] types = new byte[16];
+    /**
+     * The ordinal of every id, indexed by the tag of the type first
+     */
+    private volatile int[][] ordinals = emptyOrdinals();
+    private volatile int size;
+    /**
+     * The distance between the ids of this mapping, the shard count of a sharded index and 1 otherwise
+     */
+    private final int stride;
+
+    public OrdinalMapping() {
+        this(1);
+    }
+
+    public OrdinalMapping(int stride) {
+        this.stride = stride;
+        Arrays.fill(ids, ABSENT);
+    }
+
+    public synchronized void set(int ordinal, NodeType type, int id) {
+        int[] currentIds = ids;
+        byte[] currentTypes = types;
+        if (ordinal >= currentIds.length) {
+            int length = currentIds.length;
+            currentIds = Arrays.copyOf(currentIds, Math.max(length * 2, ordinal + 1));
+            Arrays.fill(currentIds, length, currentIds.length, ABSENT);
+            currentTypes = Arrays.copyOf(currentTypes, currentIds.length);
+        }
+        currentIds[ordinal] = id;
+        currentTypes[ordinal] = type.tag();
+        // the ids are published first, a reader finding the ordinal of an id checks the id held there
+        types = currentTypes;
+        ids = currentIds;
+        if (id != ABSENT) {
+            int slot = id / stride;
+            int[] currentOrdinals = ordinals[type.tag()];
+            if (slot >= currentOrdinals.length) {
+                int length = currentOrdinals.length;
+                currentOrdinals = Arrays.copyOf(currentOrdinals, Math.max(length * 2, slot + 1));
+                Arrays.fill(currentOrdinals, length, currentOrdinals.length, ABSENT);
+            }
+            currentOrdinals[slot] = ordinal;
+            int[][] all = ordinals.clone();
+            all[type.tag()] = currentOrdinals;
+            ordinals = all;
+        }
+        size = Math.max(size, ordinal + 1);
+    }
+
+    /**
+     * Detach the ordinal from its id, the id no longer resolves to an ordinal afterwards
+     */
+    public synchronized void remove(int ordinal) {
+        int id = ids[ordinal];
+        if (id != ABSENT) {
+            ordinals[types[ordinal]][id / stride] = ABSENT;
+            ids[ordinal] = ABSENT;
+        }
+    }
+
+    /**
+     * The id of the ordinal, -1 if the ordinal was removed
+     */
+    public int id(int ordinal) {
+        return ids[ordinal];
+    }
+
+    public NodeType type(int ordinal) {
+        return NodeType.of(types[ordinal]);
+    }
+
+    /**
+     * The ordinal of the id, -1 if the id is not part of this generation
+     */
+    public int ordinal(NodeType type, int id) {
+        int[] current = ordinals[type.tag()];
+        int slot = id / stride;
+        if (id < 0 || slot >= current.length) {
+            return ABSENT;
+        }
+        int ordinal = current[slot];
+        // the id of another shard shares its slot with an id of this one
+        return ordinal != ABSENT && ids[ordinal] == id ? ordinal : ABSENT;
+    }
+
+    public int stride() {
+        return stride;
+    }
+
+    /**
+     * The number of ordinals mapped so far, removed ones included
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The largest id still mapped among the first {@code size} ordinals
+     */
+    public int maxId(int size) {
+        int[] current = ids;
+        int max = 0;
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, current[i]);
+        }
+        return max;
+    }
+
+    /**
+     * An independent mapping of the first {@code size} ordinals, removed ones included
+     */
+    OrdinalMapping copy(int size) {
+        OrdinalMapping copy = new OrdinalMapping(stride);
+        int[] currentIds = ids;
+        byte[] currentTypes = types;
+        for (int i = 0; i < size; i++) {
+            copy.set(i, NodeType.of(currentTypes[i]), currentIds[i]);
+        }
+        return copy;
+    }
+
+    void write(DataOutput out, int size) throws IOException {
+        int[] current = ids;
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(current[i]);
+        }
+    }
+
+    /**
+     * The types are written apart from the ids, so the id files written before types existed stay readable
+     */
+    void writeTypes(DataOutput out, int size) throws IOException {
+        out.writeInt(size);
+        out.write(types, 0, size);
+    }
+
+    static OrdinalMapping read(DataInput in, int stride) throws IOException {
+        OrdinalMapping mapping = new OrdinalMapping(stride);
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            mapping.set(i, NodeType.TEXT, in.readInt());
+        }
+        return mapping;
+    }
+
+    /**
+     * Read the types written by {@link #writeTypes}, the ids have been read before
+     */
+    void readTypes(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count != size) {
+            throw new IOException("Node types do not match the id mapping");
+        }
+        byte[] tags = new byte[count];
+        in.readFully(tags);
+        retype(tags);
+    }
+
+    /**
+     * Give every ordinal the type, for an index written without types
+     */
+    void retype(NodeType type) {
+        byte[] tags = new byte[size];
+        Arrays.fill(tags, type.tag());
+        retype(tags);
+    }
+
+    /**
+     * The way back is built again from scratch, read as one type a sentence and a link of the same id shared a slot
+     */
+    private synchronized void retype(byte[] tags) {
+        int[] currentIds = ids;
+        ordinals = emptyOrdinals();
+        for (int ordinal = 0; ordinal < tags.length; ordinal++) {
+            set(ordinal, NodeType.of(tags[ordinal]), currentIds[ordinal]);
+        }
+    }
+
+    private static int[][] emptyOrdinals() {
+        int[][] empty = new int[NodeType.values().length][];
+        for (int i = 0; i < empty.length; i++) {
+            empty[i] = new int[16];
+            Arrays.fill(empty[i], ABSENT);
+        }
+        return empty;
+    }
+}
@@ -0,0 +1,70 @@
+package com.ling.lingkb.llm.vector;
+
+import io.github.jbellis.jvector.graph.RandomAccessVectorValues;
+import io.github.jbellis.jvector.vector.VectorizationProvider;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import io.github.jbellis.jvector.vector.types.VectorTypeSupport;
+
+/**
+ * The leading dimensions of other vector values scaled back to unit length. Matryoshka trained embeddings keep
+ * most of their meaning in a prefix, so a graph is built over the prefix and its candidates are reranked with the
+ * full vectors.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/19
+ */
+public class PrefixVectorValues implements RandomAccessVectorValues {
+    private static final VectorTypeSupport VTS = VectorizationProvider.getInstance().getVectorTypeSupport();
+
+    private final RandomAccessVectorValues source;
+    private final int dimension;
+
+    public PrefixVectorValues(RandomAccessVectorValues source, int dimension) {
+        this.source = source;
+        this.dimension = dimension;
+    }
+
+    /**
+     * The first {@code dimension} components of the vector in a new unit length array
+     */
+    public static float[] prefix(VectorFloat<?> vector, int dimension) {
+        float[] prefix = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            prefix[i] = vector.get(i);
+        }
+        return VectorCodec.normalize(prefix);
+    }
+
+    /**
+     * Whether {@code indexDimension} truncates vectors of {@code dimension}, 0 keeps the full vectors
+     */
+    public static boolean truncates(int indexDimension, int dimension) {
+        return indexDimension > 0 && indexDimension < dimension;
+    }
+
+    @Override
+    public int size() {
+        return source.size();
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public VectorFloat<?> getVector(int i) {
+        return VTS.createFloatVector(prefix(source.getVector(i), dimension));
+    }
+
+    @Override
+    public boolean isValueShared() {
+        return false;
+    }
+
+    @Override
+    public RandomAccessVectorValues copy() {
+        return new PrefixVectorValues(source.copy(), dimension);
+    }
+}
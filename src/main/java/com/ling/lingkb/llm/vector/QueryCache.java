@@ -0,0 +1,83 @@
+package com.ling.lingkb.llm.vector;
+
+import com.ling.lingkb.entity.CacheStats;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used entries bounded by count, an entry older than the time to live is dropped when it is read.
+ * Hits and misses are counted for the cache endpoint. A capacity of 0 disables the cache.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/19
+ */
+public class QueryCache<K, V> {
+    private final String name;
+    private final int capacity;
+    private final long ttlMillis;
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+
+    public QueryCache(String name, int capacity, long ttlMillis) {
+        this.name = name;
+        this.capacity = capacity;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * The value of the key, null if it is absent or expired
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && System.currentTimeMillis() - entry.createTime > ttlMillis) {
+            entries.remove(key);
+            expirations++;
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        if (capacity <= 0) {
+            return;
+        }
+        entries.put(key, new Entry<>(value, System.currentTimeMillis()));
+        Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (entries.size() > capacity && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized CacheStats stats() {
+        long requests = hits + misses;
+        return CacheStats.builder().name(name).size(entries.size()).capacity(capacity).ttlMillis(ttlMillis)
+                .hits(hits).misses(misses).hitRate(requests == 0 ? 0 : (double) hits / requests)
+                .evictions(evictions).expirations(expirations).build();
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long createTime;
+
+        Entry(V value, long createTime) {
+            this.value = value;
+            this.createTime = createTime;
+        }
+    }
+}
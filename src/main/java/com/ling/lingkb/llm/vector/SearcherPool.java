@@ -0,0 +1,63 @@
+package com.ling.lingkb.llm.vector;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Search state reused across queries, a graph searcher with its visited set and candidate heaps and the views it
+ * reads through. A query borrows an entry and gives it back, so the pool never holds more entries than queries ran
+ * at once.
+ * <p>
+ * The entries belong to the index that owns the pool and are closed with it. Thread locals of pooled threads
+ * would instead keep them, and through them the graph and its vectors, reachable after the index is released.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/19
+ */
+@Slf4j
+class SearcherPool<T extends Closeable> implements Closeable {
+    private final Supplier<T> factory;
+    private final ConcurrentLinkedQueue<T> idle = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
+
+    SearcherPool(Supplier<T> factory) {
+        this.factory = factory;
+    }
+
+    T borrow() {
+        T entry = idle.poll();
+        return entry == null ? factory.get() : entry;
+    }
+
+    void giveBack(T entry) {
+        idle.offer(entry);
+        // an entry given back while the pool was being closed is closed here
+        if (closed && idle.remove(entry)) {
+            close(entry);
+        }
+    }
+
+    /**
+     * Close the idle entries, those still borrowed are closed when given back
+     */
+    @Override
+    public void close() {
+        closed = true;
+        T entry;
+        while ((entry = idle.poll()) != null) {
+            close(entry);
+        }
+    }
+
+    private static void close(Closeable entry) {
+        try {
+            entry.close();
+        } catch (IOException e) {
+            log.warn("Failed to close searcher", e);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.ling.lingkb.llm.vector;
+
+import io.github.jbellis.jvector.graph.SearchResult;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ToIntFunction;
+
+/**
+ * A vector index partitioned into shards by id, every shard is a generation of its own that is built, compacted
+ * and persisted independently. A query is sent to all shards and their results are merged by score.
+ * <p>
+ * Ids are assigned to shards by their remainder, so the rows of one shard can be selected in SQL with
+ * {@code mod(id, count)} and consecutive ids spread evenly over the shards.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/16
+ */
+public class ShardedIndex {
+    private final AtomicReference<IndexGeneration>[] shards;
+    private final AtomicBoolean[] dirty;
+
+    @SuppressWarnings("unchecked")
+    public ShardedIndex(int count) {
+        shards = new AtomicReference[count];
+        dirty = new AtomicBoolean[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new AtomicReference<>();
+            dirty[i] = new AtomicBoolean();
+        }
+    }
+
+    public int count() {
+        return shards.length;
+    }
+
+    public int shardOf(int id) {
+        return Math.floorMod(id, shards.length);
+    }
+
+    public AtomicReference<IndexGeneration> shard(int shard) {
+        return shards[shard];
+    }
+
+    public AtomicReference<IndexGeneration> shardFor(int id) {
+        return shards[shardOf(id)];
+    }
+
+    /**
+     * Flag the shard as changed since it was last written
+     */
+    public void markDirty(int shard) {
+        dirty[shard].set(true);
+    }
+
+    /**
+     * Take the changed flag of the shard, the caller is expected to write it
+     */
+    public boolean clearDirty(int shard) {
+        return dirty[shard].getAndSet(false);
+    }
+
+    /**
+     * Tombstone the node of the id in its shard
+     *
+     * @return false if the id is not indexed
+     */
+    public boolean delete(NodeType type, int id) {
+        int shard = shardOf(id);
+        IndexGeneration generation = shards[shard].get();
+        if (generation != null && generation.delete(type, id)) {
+            dirty[shard].set(true);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Search every shard and merge the results, the shards are searched on {@code executor} when there are several
+     *
+     * @return the best {@code topK} nodes with their scores in descending score order, {@link SearchResult.NodeScore#node}
+     * holds the {@link NodeType#key} of the node rather than an ordinal
+     */
+    public List<SearchResult.NodeScore> search(float[] query, int topK, int rerankK, Executor executor) {
+        return search(query, topK, rerankK, null, executor);
+    }
+
+    /**
+     * @param accept the {@link NodeType#key}s of the nodes that may be found, null to accept every node
+     */
+    public List<SearchResult.NodeScore> search(float[] query, int topK, int rerankK, NodeBitmap accept,
+                                               Executor executor) {
+        return new ArrayList<>(Arrays.asList(searchResult(query, topK, rerankK, accept, executor).getNodes()));
+    }
+
+    /**
+     * Like {@link #search(float[], int, int, NodeBitmap, Executor)} but with the visited, expanded and reranked
+     * counts of the shards summed up
+     */
+    public SearchResult searchResult(float[] query, int topK, int rerankK, NodeBitmap accept, Executor executor) {
+        return searchResult(query, topK, rerankK, accept, null, executor);
+    }
+
+    /**
+     * @param type the only type of node that may be found, null to accept every type
+     */
+    public SearchResult searchResult(float[] query, int topK, int rerankK, NodeBitmap accept, NodeType type,
+                                     Executor executor) {
+        IndexGeneration[] generations = acquireAll();
+        try {
+            if (generations.length == 1) {
+                return search(generations[0], query, topK, rerankK, accept, type);
+            }
+            List<CompletableFuture<SearchResult>> futures = new ArrayList<>();
+            for (IndexGeneration generation : generations) {
+                futures.add(CompletableFuture
+                        .supplyAsync(() -> search(generation, query, topK, rerankK, accept, type), executor));
+            }
+            List<SearchResult.NodeScore> merged = new ArrayList<>();
+            int visited = 0;
+            int expanded = 0;
+            int expandedBaseLayer = 0;
+            int reranked = 0;
+            float worst = Float.POSITIVE_INFINITY;
+            for (CompletableFuture<SearchResult> future : futures) {
+                SearchResult result = future.join();
+                merged.addAll(Arrays.asList(result.getNodes()));
+                visited += result.getVisitedCount();
+                expanded += result.getExpandedCount();
+                expandedBaseLayer += result.getExpandedCountBaseLayer();
+                reranked += result.getRerankedCount();
+                worst = Math.min(worst, result.getWorstApproximateScoreInTopK());
+            }
+            merged.sort(Comparator.comparingDouble((SearchResult.NodeScore nodeScore) -> nodeScore.score).reversed());
+            return new SearchResult(merged.subList(0, Math.min(topK, merged.size()))
+                    .toArray(new SearchResult.NodeScore[0]), visited, expanded, expandedBaseLayer, reranked, worst);
+        } finally {
+            for (IndexGeneration generation : generations) {
+                if (generation != null) {
+                    generation.release();
+                }
+            }
+        }
+    }
+
+    private static SearchResult search(IndexGeneration generation, float[] query, int topK, int rerankK,
+                                       NodeBitmap accept, NodeType type) {
+        if (generation == null || generation.size() == 0) {
+            return new SearchResult(new SearchResult.NodeScore[0], 0, 0, 0, 0, Float.POSITIVE_INFINITY);
+        }
+        SearchResult result = generation.search(query, topK, rerankK, accept, type);
+        SearchResult.NodeScore[] nodes = new SearchResult.NodeScore[result.getNodes().length];
+        for (int i = 0; i < nodes.length; i++) {
+            int ordinal = result.getNodes()[i].node;
+            nodes[i] = new SearchResult.NodeScore(generation.type(ordinal).key(generation.id(ordinal)),
+                    result.getNodes()[i].score);
+        }
+        return new SearchResult(nodes, result.getVisitedCount(), result.getExpandedCount(),
+                result.getExpandedCountBaseLayer(), result.getRerankedCount(), result.getWorstApproximateScoreInTopK());
+    }
+
+    private IndexGeneration[] acquireAll() {
+        IndexGeneration[] generations = new IndexGeneration[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            generations[i] = IndexGeneration.acquire(shards[i]);
+        }
+        return generations;
+    }
+
+    /**
+     * Drop every shard but keep their files, the shards are closed once their readers are gone
+     */
+    public void unload() {
+        for (AtomicReference<IndexGeneration> shard : shards) {
+            IndexGeneration generation = shard.get();
+            if (generation != null) {
+                generation.retainFiles();
+            }
+            IndexGeneration.publish(shard, null);
+        }
+    }
+
+    public int size() {
+        return sum(IndexGeneration::size);
+    }
+
+    public int liveSize() {
+        return sum(IndexGeneration::liveSize);
+    }
+
+    public long bytesUsed() {
+        long bytes = 0;
+        for (IndexGeneration generation : acquireAll()) {
+            if (generation != null) {
+                try {
+                    bytes += generation.bytesUsed();
+                } finally {
+                    generation.release();
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Whether any shard keeps its vectors disk resident
+     */
+    public boolean isDiskResident() {
+        return Arrays.stream(shards).map(AtomicReference::get)
+                .anyMatch(generation -> generation != null && generation.isDiskResident());
+    }
+
+    private int sum(ToIntFunction<IndexGeneration> value) {
+        int sum = 0;
+        for (IndexGeneration generation : acquireAll()) {
+            if (generation != null) {
+                try {
+                    sum += value.applyAsInt(generation);
+                } finally {
+                    generation.release();
+                }
+            }
+        }
+        return sum;
+    }
+}
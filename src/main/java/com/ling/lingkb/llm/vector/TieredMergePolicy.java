@@ -0,0 +1,78 @@
+package com.ling.lingkb.llm.vector;
+
+/**
+ * Decides when the heap part of a disk resident generation is flushed and which of its segments are merged.
+ * <p>
+ * Segments are grouped into tiers by their live size, a tier spans a factor of {@code mergeFactor} starting at the
+ * flush size. Once {@code mergeFactor} adjacent segments share a tier they are merged into one segment of the next
+ * tier, so every vector is rewritten about once per tier instead of on every persist. A segment whose share of
+ * tombstones reaches the compaction ratio is rewritten on its own.
+ * <p>
+ * A heap generation has no segments and is written whole on every persist.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/17
+ */
+public class TieredMergePolicy {
+    private final int flushSize;
+    private final int mergeFactor;
+    private final double deletedRatio;
+
+    public TieredMergePolicy(int flushSize, int mergeFactor, double deletedRatio) {
+        this.flushSize = Math.max(1, flushSize);
+        this.mergeFactor = Math.max(2, mergeFactor);
+        this.deletedRatio = deletedRatio;
+    }
+
+    /**
+     * Whether the heap part has grown enough to be written out as a segment
+     */
+    public boolean shouldFlush(IndexGeneration generation) {
+        return generation.isDiskResident() && generation.heapSize() >= flushSize;
+    }
+
+    /**
+     * The range {@code [from, to)} of segments to merge next, null if no merge is due
+     */
+    public int[] findMerge(IndexGeneration generation) {
+        int count = generation.segmentCount();
+        int[] sizes = new int[count];
+        int[] deleted = new int[count];
+        for (int s = 0; s < count; s++) {
+            sizes[s] = generation.segmentSize(s);
+            deleted[s] = generation.segmentDeleted(s);
+        }
+        return findMerge(sizes, deleted);
+    }
+
+    /**
+     * The same over the node count and the tombstone count of every segment, each tombstone count is one scan
+     */
+    int[] findMerge(int[] sizes, int[] deleted) {
+        int count = sizes.length;
+        for (int s = 0; s < count; s++) {
+            if (deleted[s] > 0 && deleted[s] >= deletedRatio * sizes[s]) {
+                return new int[]{s, s + 1};
+            }
+        }
+        int runStart = 0;
+        for (int s = 1; s <= count; s++) {
+            if (s == count || tier(sizes[s] - deleted[s]) != tier(sizes[runStart] - deleted[runStart])) {
+                if (s - runStart >= mergeFactor) {
+                    return new int[]{s - mergeFactor, s};
+                }
+                runStart = s;
+            }
+        }
+        return null;
+    }
+
+    private int tier(long size) {
+        int tier = 0;
+        for (long bound = (long) flushSize * mergeFactor; size >= bound; bound *= mergeFactor) {
+            tier++;
+        }
+        return tier;
+    }
+}
@@ -0,0 +1,241 @@
+package com.ling.lingkb.llm.vector;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary format of the vector columns.
+ * <pre>
+ * byte 0-1  magic 'L' 'V'
+ * byte 2    format version
+ * byte 3    element encoding, see {@link Encoding}
+ * byte 4    flags, bit 0: needs no scaling, of unit length or zero
+ * byte 5    reserved
+ * byte 6-7  dimension, unsigned
+ * int8 only: float scale, element = byte * scale
+ * elements, little endian
+ * </pre>
+ * Values without the magic are read as the legacy comma separated text. The indexes score by dot product, so
+ * vectors written before they were normalized on insert are scaled to unit length when read.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/8
+ */
+public class VectorCodec {
+    private static final byte MAGIC_0 = 'L';
+    private static final byte MAGIC_1 = 'V';
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int FLAGS = 4;
+    private static final byte NORMALIZED = 1;
+    /**
+     * Squared norms this close to 1 count as unit length, float16 and int8 elements lose that much
+     */
+    private static final double UNIT_TOLERANCE = 1e-3;
+
+    public enum Encoding {
+        /**
+         * 4 bytes per element, lossless
+         */
+        FLOAT32(1, 4),
+        /**
+         * 2 bytes per element, IEEE 754 half precision
+         */
+        FLOAT16(2, 2),
+        /**
+         * 1 byte per element with one scale per vector
+         */
+        INT8(3, 1);
+
+        private final int code;
+        private final int bytes;
+
+        Encoding(int code, int bytes) {
+            this.code = code;
+            this.bytes = bytes;
+        }
+
+        static Encoding of(int code) {
+            for (Encoding encoding : values()) {
+                if (encoding.code == code) {
+                    return encoding;
+                }
+            }
+            throw new IllegalArgumentException("Unknown vector encoding " + code);
+        }
+    }
+
+    public static byte[] encode(float[] vector, Encoding encoding) {
+        int extra = encoding == Encoding.INT8 ? 4 : 0;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + extra + vector.length * encoding.bytes)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        byte flags = isUnit(vector) ? NORMALIZED : 0;
+        buffer.put(MAGIC_0).put(MAGIC_1).put(VERSION).put((byte) encoding.code).put(flags).put((byte) 0)
+                .putShort((short) vector.length);
+        switch (encoding) {
+            case FLOAT16:
+                for (float v : vector) {
+                    buffer.putShort(toHalf(v));
+                }
+                break;
+            case INT8:
+                float max = 0;
+                for (float v : vector) {
+                    max = Math.max(max, Math.abs(v));
+                }
+                float scale = max == 0 ? 1 : max / 127;
+                buffer.putFloat(scale);
+                for (float v : vector) {
+                    buffer.put((byte) Math.round(v / scale));
+                }
+                break;
+            default:
+                for (float v : vector) {
+                    buffer.putFloat(v);
+                }
+        }
+        return buffer.array();
+    }
+
+    public static float[] decode(byte[] bytes) {
+        if (bytes.length < HEADER_SIZE || bytes[0] != MAGIC_0 || bytes[1] != MAGIC_1) {
+            return normalize(parseText(new String(bytes, StandardCharsets.UTF_8)));
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(3);
+        Encoding encoding = Encoding.of(buffer.get());
+        buffer.position(6);
+        float[] vector = new float[Short.toUnsignedInt(buffer.getShort())];
+        switch (encoding) {
+            case FLOAT16:
+                for (int i = 0; i < vector.length; i++) {
+                    vector[i] = fromHalf(buffer.getShort());
+                }
+                break;
+            case INT8:
+                float scale = buffer.getFloat();
+                for (int i = 0; i < vector.length; i++) {
+                    vector[i] = buffer.get() * scale;
+                }
+                break;
+            default:
+                buffer.asFloatBuffer().get(vector);
+        }
+        return (bytes[FLAGS] & NORMALIZED) != 0 ? vector : normalize(vector);
+    }
+
+    /**
+     * Whether the value was written from a unit length vector or a zero vector, which has no unit length to scale to
+     */
+    public static boolean isNormalized(byte[] bytes) {
+        return bytes.length >= HEADER_SIZE && bytes[0] == MAGIC_0 && bytes[1] == MAGIC_1 &&
+                (bytes[FLAGS] & NORMALIZED) != 0;
+    }
+
+    /**
+     * Scale the vector to unit length in place, a zero vector is left as it is
+     *
+     * @return the vector
+     */
+    public static float[] normalize(float[] vector) {
+        double sum = 0;
+        for (float v : vector) {
+            sum += v * v;
+        }
+        if (sum > 0 && Math.abs(sum - 1) > 1e-7) {
+            float scale = (float) (1 / Math.sqrt(sum));
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * A zero vector counts as well, it stays as it is when normalized
+     */
+    private static boolean isUnit(float[] vector) {
+        double sum = 0;
+        for (float v : vector) {
+            sum += v * v;
+        }
+        return sum == 0 || Math.abs(sum - 1) <= UNIT_TOLERANCE;
+    }
+
+    /**
+     * The comma separated text written before the binary format
+     */
+    static float[] parseText(String str) {
+        int dimension = 1;
+        for (int i = 0; i < str.length(); i++) {
+            if (str.charAt(i) == ',') {
+                dimension++;
+            }
+        }
+        float[] array = new float[dimension];
+        int currentPos = 0;
+        int nextComma;
+        int index = 0;
+        final int length = str.length();
+
+        while (currentPos < length && index < dimension) {
+            nextComma = str.indexOf(',', currentPos);
+            if (nextComma == -1) {
+                nextComma = length;
+            }
+
+            array[index++] = Float.parseFloat(str.substring(currentPos, nextComma).trim());
+            currentPos = nextComma + 1;
+        }
+        return array;
+    }
+
+    private static short toHalf(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = ((bits >>> 23) & 0xff) - 127 + 15;
+        int mantissa = bits & 0x7fffff;
+        if (exponent >= 0x1f) {
+            // overflow, infinity and NaN
+            boolean nan = ((bits >>> 23) & 0xff) == 0xff && mantissa != 0;
+            return (short) (sign | 0x7c00 | (nan ? 0x200 : 0));
+        }
+        if (exponent <= 0) {
+            if (exponent < -10) {
+                return (short) sign;
+            }
+            // subnormal, round to nearest
+            mantissa |= 0x800000;
+            int shift = 14 - exponent;
+            int half = mantissa >> shift;
+            if (((mantissa >> (shift - 1)) & 1) != 0) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+        int half = sign | (exponent << 10) | (mantissa >> 13);
+        if ((mantissa & 0x1000) != 0) {
+            // round to nearest, a carry into the exponent is still correct
+            half++;
+        }
+        return (short) half;
+    }
+
+    private static float fromHalf(short value) {
+        int bits = value & 0xffff;
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1f;
+        int mantissa = bits & 0x3ff;
+        if (exponent == 0) {
+            // zero and subnormal
+            float magnitude = mantissa * 0x1p-24f;
+            return sign == 0 ? magnitude : -magnitude;
+        }
+        if (exponent == 0x1f) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        }
+        return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+    }
+}
@@ -0,0 +1,69 @@
+package com.ling.lingkb.llm.vector;
+
+import io.github.jbellis.jvector.graph.GraphIndex;
+import io.github.jbellis.jvector.graph.SearchResult;
+import io.github.jbellis.jvector.util.Bits;
+import io.github.jbellis.jvector.vector.types.VectorFloat;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A search structure over the heap vectors of a generation. The generation owns the vectors, the ordinal mapping
+ * and the tombstones, an index only finds the ordinals closest to a query.
+ * <p>
+ * Ordinals are added in ascending order by a single writer while searches run concurrently. Deleted ordinals are
+ * excluded through the accept filter of every search, {@link #delete(int)} only lets an index give space back.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/18
+ */
+public interface VectorIndex extends Closeable {
+
+    VectorIndexType type();
+
+    /**
+     * Index every vector of the values the index was created over
+     */
+    void build();
+
+    /**
+     * Index the vector at the ordinal, it has been appended to the values before
+     */
+    void add(int ordinal);
+
+    void delete(int ordinal);
+
+    /**
+     * The best {@code topK} accepted ordinals in descending score order
+     */
+    SearchResult search(VectorFloat<?> query, int topK, Bits acceptOrds);
+
+    /**
+     * @param rerankK how many candidates are rescored with the full vectors by an index searching approximations
+     */
+    default SearchResult search(VectorFloat<?> query, int topK, int rerankK, Bits acceptOrds) {
+        return search(query, topK, acceptOrds);
+    }
+
+    /**
+     * Write the vectors to {@code path} and the structure of the index next to it
+     */
+    void write(Path path) throws IOException;
+
+    /**
+     * Memory held by the structure on top of the vectors
+     */
+    long bytesUsed();
+
+    /**
+     * The graph searched by the index, null for an index without one
+     */
+    default GraphIndex graph() {
+        return null;
+    }
+
+    @Override
+    void close();
+}
@@ -0,0 +1,82 @@
+package com.ling.lingkb.llm.vector;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * The available {@link VectorIndex} engines
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/18
+ */
+public enum VectorIndexType {
+    /**
+     * Exact search by scoring every vector, nothing to build
+     */
+    FLAT {
+        @Override
+        public VectorIndex create(MutableVectorValues vectors, GraphConfig graph) {
+            return new FlatIndex(vectors);
+        }
+
+        @Override
+        VectorIndex load(Path path, MutableVectorValues vectors, int size, GraphConfig graph) throws IOException {
+            return FlatIndex.load(path, vectors, size);
+        }
+    },
+    /**
+     * Inverted lists under k-means centroids, only the lists closest to the query are scanned
+     */
+    IVF_FLAT {
+        @Override
+        public VectorIndex create(MutableVectorValues vectors, GraphConfig graph) {
+            return new IvfFlatIndex(vectors);
+        }
+
+        @Override
+        VectorIndex load(Path path, MutableVectorValues vectors, int size, GraphConfig graph) throws IOException {
+            return IvfFlatIndex.load(path, vectors, size);
+        }
+    },
+    /**
+     * The jvector graph, built over a prefix of the vectors if the graph config gives an index dimension
+     */
+    HNSW {
+        @Override
+        public VectorIndex create(MutableVectorValues vectors, GraphConfig graph) {
+            return new HnswIndex(vectors, graph);
+        }
+
+        @Override
+        VectorIndex load(Path path, MutableVectorValues vectors, int size, GraphConfig graph) throws IOException {
+            return HnswIndex.load(path, vectors, size, graph);
+        }
+    };
+
+    /**
+     * An empty index over {@code vectors}, to be filled with {@link VectorIndex#build()} or {@link VectorIndex#add}
+     *
+     * @param graph how a graph is built, the scanning engines ignore it and always score the full vectors
+     */
+    public abstract VectorIndex create(MutableVectorValues vectors, GraphConfig graph);
+
+    /**
+     * Read the vectors written by {@link VectorIndex#write(Path)} into {@code vectors} and open the index over them
+     *
+     * @param size the number of vectors expected
+     */
+    abstract VectorIndex load(Path path, MutableVectorValues vectors, int size, GraphConfig graph)
+            throws IOException;
+
+    /**
+     * The engine for {@code count} vectors: exact search while scanning is cheap, inverted lists while a graph
+     * would mostly cost build time, the graph beyond that
+     */
+    public static VectorIndexType select(int count, int flatMax, int ivfMax) {
+        if (count <= flatMax) {
+            return FLAT;
+        }
+        return count <= ivfMax ? IVF_FLAT : HNSW;
+    }
+}
@@ -8,6 +8,7 @@ import com.hankcs.hanlp.summary.TextRankKeyword;
 import com.hankcs.hanlp.utility.SentencesUtil;
 import com.ling.lingkb.entity.LingDocument;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * @author shipotian
@@ -34,6 +35,16 @@ public class ChineseUtil {
         document.setSentenceCount(sentences.size());
     }
 
+    /**
+     * Lower cased words of the text without stop words and punctuation
+     */
+    static List<String> tokenize(String text) {
+        List<Term> terms = HanLP.segment(text);
+        CoreStopWordDictionary.apply(terms);
+        return terms.stream().map(term -> term.word.trim().toLowerCase()).filter(LanguageUtil::isToken)
+                .collect(Collectors.toList());
+    }
+
     static void keywords(LingDocument document, int keywordSize) {
         String text = document.getText();
         String keywords = String.join(",", TextRankKeyword.getKeywordList(text, keywordSize));
@@ -22,6 +22,19 @@ class EnglishUtil {
     private static StanfordCoreNLP pipeline = new StanfordCoreNLP(PropertiesUtils
             .asProperties("annotators", "tokenize,ssplit,pos,lemma,ner,parse,sentiment", "tokenize.language",
                     Language.EN.getIsoCode()));
+    /**
+     * Only splits tokens, the full pipeline is far too slow to run on every question
+     */
+    private static StanfordCoreNLP tokenizer = new StanfordCoreNLP(PropertiesUtils
+            .asProperties("annotators", "tokenize", "tokenize.language", Language.EN.getIsoCode()));
+
+    /**
+     * Lower cased words of the text without punctuation
+     */
+    static List<String> tokenize(String text) {
+        return tokenizer.processToCoreDocument(text).tokens().stream().map(token -> token.word().toLowerCase())
+                .filter(LanguageUtil::isToken).collect(Collectors.toList());
+    }
 
     static List<String> getSentences(String text) {
         CoreDocument coreDocument = pipeline.processToCoreDocument(text);
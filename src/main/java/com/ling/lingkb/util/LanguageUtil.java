@@ -98,6 +98,24 @@ public class LanguageUtil {
         }
     }
 
+    /**
+     * The terms of the text for lexical search, segmented with HanLP for Chinese and CoreNLP for English
+     */
+    public static List<String> tokenize(String text) {
+        if (isChinese()) {
+            return ChineseUtil.tokenize(text);
+        } else {
+            return EnglishUtil.tokenize(text);
+        }
+    }
+
+    /**
+     * Whether the word carries a letter or digit, punctuation and blanks are not indexed
+     */
+    static boolean isToken(String word) {
+        return word.codePoints().anyMatch(Character::isLetterOrDigit);
+    }
+
     public static void keywords(LingDocument document, int keywordSize) {
         if (isChinese()) {
             ChineseUtil.keywords(document, keywordSize);
@@ -25,6 +25,7 @@ CREATE TABLE `ling_document` (
   `author` varchar(255) DEFAULT NULL,
   `size` bigint(20) DEFAULT NULL,
   `source_file_name` varchar(255) DEFAULT NULL,
+  `source_type` varchar(32) DEFAULT NULL COMMENT 'upload|serverPath|confluence|web',
   `creation_date` bigint(20) DEFAULT NULL,
   `page_count` int(11) DEFAULT NULL,
   `char_count` int(11) DEFAULT NULL,
@@ -46,7 +47,7 @@ CREATE TABLE `ling_document_link` (
   `content` longtext,
   `content_assistant` varchar(255) DEFAULT NULL,
   `desc_text` text,
-  `desc_vector` text,
+  `desc_vector_bin` mediumblob,
   PRIMARY KEY (`id`)
 ) ENGINE=InnoDB AUTO_INCREMENT=126 DEFAULT CHARSET=utf8mb4;
 
@@ -60,7 +61,8 @@ CREATE TABLE `ling_vector` (
   `workspace` varchar(255) NOT NULL,
   `node_id` int(11) DEFAULT NULL,
   `txt` text NOT NULL,
-  `vector` text NOT NULL,
+  `vector_bin` mediumblob NOT NULL,
   `persisted` bit(1) NOT NULL DEFAULT b'0',
-  PRIMARY KEY (`id`)
+  PRIMARY KEY (`id`),
+  KEY `idx_workspace_node` (`workspace`,`node_id`)
 ) ENGINE=InnoDB AUTO_INCREMENT=492 DEFAULT CHARSET=utf8mb4;
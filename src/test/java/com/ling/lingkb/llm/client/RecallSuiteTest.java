@@ -0,0 +1,407 @@
+package com.ling.lingkb.llm.client;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.ling.lingkb.entity.LingDocumentLink;
+import com.ling.lingkb.entity.LingVector;
+import com.ling.lingkb.entity.SearchHit;
+import com.ling.lingkb.global.SoleMapper;
+import com.ling.lingkb.llm.vector.IndexManifest;
+import com.ling.lingkb.llm.vector.VectorCodec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * Recall of every engine and storage encoding against exact search on a fixed corpus. The corpus and the queries
+ * are drawn from seeded clusters with the variance decaying over the dimensions like a Matryoshka embedding, so
+ * every run measures the same vectors.
+ * <p>
+ * Every mode is served by a {@link VectorStoreClient} configured as {@code application.properties} with the engine
+ * and index mode of the mode, reading the corpus from a stubbed mapper. The text index is measured through
+ * {@link VectorStoreClient#searchTopK} at recall@1/3/10 with its latency, the link index through
+ * {@link VectorStoreClient#searchLink} at recall@1. Stored vectors go through {@link VectorCodec} first, the disk
+ * resident mode adds the product quantization of its segments. The link index is never disk resident, so the disk
+ * mode measures the texts only.
+ * <p>
+ * Every recall is compared with {@value #BASELINE_RESOURCE} and fails the test when it falls below its baseline by
+ * more than the tolerance written there. Run with {@code -Drecall.baseline.write=<file>} to record the measured
+ * recalls as the new baseline instead.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/19
+ */
+@Slf4j
+class RecallSuiteTest {
+    private static final String BASELINE_RESOURCE = "/recall-baseline.properties";
+    private static final String WRITE_PROPERTY = "recall.baseline.write";
+    private static final long SEED = 20250819L;
+    private static final int DIMENSION = 256;
+    private static final int TEXT_SIZE = 10_000;
+    private static final int LINK_SIZE = 2_000;
+    private static final int QUERIES = 200;
+    private static final int CLUSTERS = 64;
+    private static final int[] RECALL_AT = {1, 3, 10};
+    private static final double DEFAULT_TOLERANCE = 0.02;
+    /**
+     * Product quantization trains with unseeded k-means, the disk resident recall@1 moves by about 0.02 between runs
+     */
+    private static final double DISK_TOLERANCE = 0.04;
+    /**
+     * Dimensions per product quantization subspace, as {@code vector.disk.pq.subspaces} does for 1024 dimensions
+     */
+    private static final int DIMENSIONS_PER_SUBSPACE = 8;
+    private static final String WORKSPACE = "recall";
+
+    private final float[][] text;
+    private final float[][] links;
+    private final float[][] queries;
+
+    RecallSuiteTest() {
+        Random random = new Random(SEED);
+        float[][] centroids = new float[CLUSTERS][];
+        for (int i = 0; i < CLUSTERS; i++) {
+            centroids[i] = gaussian(random, 1);
+        }
+        this.text = sample(random, centroids, TEXT_SIZE);
+        this.links = sample(random, centroids, LINK_SIZE);
+        this.queries = sample(random, centroids, QUERIES);
+    }
+
+    @Test
+    void recallsStayWithinTheBaseline() throws Exception {
+        TreeMap<String, Double> recalls = run();
+        String write = System.getProperty(WRITE_PROPERTY);
+        if (write != null) {
+            // sorted and without a timestamp, so a new baseline diffs line by line
+            List<String> lines = new ArrayList<>();
+            lines.add("# LingKB recall baseline, written by RecallSuiteTest with -D" + WRITE_PROPERTY);
+            lines.add("tolerance=" + DEFAULT_TOLERANCE);
+            lines.add("tolerance.DISK=" + DISK_TOLERANCE);
+            recalls.forEach((key, recall) -> lines.add(key + "=" + String.format(Locale.ROOT, "%.3f", recall)));
+            Files.write(Path.of(write), lines);
+            log.info("Wrote {} recalls to {}", recalls.size(), write);
+            return;
+        }
+        Properties baseline = new Properties();
+        try (InputStream in = RecallSuiteTest.class.getResourceAsStream(BASELINE_RESOURCE)) {
+            baseline.load(in);
+        }
+        List<String> regressions = regressions(recalls, baseline);
+        assertTrue(regressions.isEmpty(), () -> "Recall regressions " + regressions);
+    }
+
+    private static float[][] sample(Random random, float[][] centroids, int size) {
+        float[][] vectors = new float[size][];
+        for (int i = 0; i < size; i++) {
+            float[] centroid = centroids[random.nextInt(centroids.length)];
+            float[] noise = gaussian(random, 0.6);
+            for (int j = 0; j < DIMENSION; j++) {
+                noise[j] += centroid[j];
+            }
+            vectors[i] = VectorCodec.normalize(noise);
+        }
+        return vectors;
+    }
+
+    private static float[] gaussian(Random random, double scale) {
+        float[] vector = new float[DIMENSION];
+        for (int j = 0; j < DIMENSION; j++) {
+            vector[j] = (float) (scale * random.nextGaussian() / Math.sqrt(1 + j / 16.0));
+        }
+        return vector;
+    }
+
+    /**
+     * Measure every engine in heap mode and the disk resident mode, each with every storage encoding
+     *
+     * @return the recalls by key, {@code <mode>.<encoding>.text.recall@k} and {@code <mode>.<encoding>.link.recall@1}
+     */
+    private TreeMap<String, Double> run() throws Exception {
+        int[][] textTruth = truth(text, RECALL_AT[RECALL_AT.length - 1]);
+        int[][] linkTruth = truth(links, 1);
+        TreeMap<String, Double> recalls = new TreeMap<>();
+        Path dir = Files.createTempDirectory("recall-suite");
+        try {
+            for (VectorCodec.Encoding encoding : VectorCodec.Encoding.values()) {
+                SoleMapper database = database(store(text, encoding), store(links, encoding));
+                for (String engine : new String[]{"flat", "ivf", "hnsw"}) {
+                    String mode = mode(engine) + "." + encoding.name();
+                    VectorStoreClient client = client(database, dir.resolve(mode), "heap", engine);
+                    try {
+                        measureText(mode, client, textTruth, recalls);
+                        measureLinks(mode, client, linkTruth, recalls);
+                    } finally {
+                        client.destroy();
+                    }
+                }
+                String mode = "DISK." + encoding.name();
+                VectorStoreClient client = client(database, dir.resolve(mode), "disk", "auto");
+                try {
+                    measureText(mode, client, textTruth, recalls);
+                } finally {
+                    client.destroy();
+                }
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        return recalls;
+    }
+
+    private static String mode(String engine) {
+        return "ivf".equals(engine) ? "IVF_FLAT" : engine.toUpperCase(Locale.ROOT);
+    }
+
+    private void measureText(String mode, VectorStoreClient client, int[][] truth, TreeMap<String, Double> recalls) {
+        int[] found = new int[RECALL_AT.length];
+        long[] latencies = new long[queries.length];
+        for (int q = 0; q < queries.length; q++) {
+            long start = System.nanoTime();
+            List<SearchHit> hits = client.searchTopK(WORKSPACE, queries[q]);
+            latencies[q] = System.nanoTime() - start;
+            for (int r = 0; r < RECALL_AT.length; r++) {
+                found[r] += overlap(hits, truth[q], RECALL_AT[r]);
+            }
+        }
+        for (int r = 0; r < RECALL_AT.length; r++) {
+            recalls.put(mode + ".text.recall@" + RECALL_AT[r], (double) found[r] / (queries.length * RECALL_AT[r]));
+        }
+        Arrays.sort(latencies);
+        log.info("{}: text recall@1 {}, @3 {}, @10 {}, p50 {}us, p99 {}us", mode, recalls.get(mode + ".text.recall@1"),
+                recalls.get(mode + ".text.recall@3"), recalls.get(mode + ".text.recall@10"),
+                latencies[latencies.length / 2] / 1000, latencies[(int) Math.ceil(latencies.length * 0.99) - 1] / 1000);
+    }
+
+    private void measureLinks(String mode, VectorStoreClient client, int[][] truth, TreeMap<String, Double> recalls) {
+        int found = 0;
+        for (int q = 0; q < queries.length; q++) {
+            LingDocumentLink link = client.searchLink(WORKSPACE, queries[q]);
+            if (link != null && link.getId() == truth[q][0]) {
+                found++;
+            }
+        }
+        recalls.put(mode + ".link.recall@1", (double) found / queries.length);
+        log.info("{}: link recall@1 {}", mode, recalls.get(mode + ".link.recall@1"));
+    }
+
+    /**
+     * How many of the first {@code k} hits are among the exact first {@code k}
+     */
+    private static int overlap(List<SearchHit> hits, int[] truth, int k) {
+        int found = 0;
+        for (int i = 0; i < Math.min(k, hits.size()); i++) {
+            int id = hits.get(i).getNodeId();
+            for (int j = 0; j < k; j++) {
+                if (truth[j] == id) {
+                    found++;
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * The ids of the exact top k of every query over the original vectors
+     */
+    private int[][] truth(float[][] corpus, int k) {
+        return IntStream.range(0, queries.length).parallel().mapToObj(q -> {
+            float[] scores = new float[corpus.length];
+            for (int i = 0; i < corpus.length; i++) {
+                for (int j = 0; j < DIMENSION; j++) {
+                    scores[i] += queries[q][j] * corpus[i][j];
+                }
+            }
+            return IntStream.range(0, corpus.length).boxed()
+                    .sorted((a, b) -> Float.compare(scores[b], scores[a])).limit(k).mapToInt(Integer::intValue)
+                    .toArray();
+        }).toArray(int[][]::new);
+    }
+
+    /**
+     * The vectors as they are read back from the database when stored with the encoding
+     */
+    private static float[][] store(float[][] vectors, VectorCodec.Encoding encoding) {
+        return Arrays.stream(vectors).map(vector -> VectorCodec.decode(VectorCodec.encode(vector, encoding)))
+                .toArray(float[][]::new);
+    }
+
+    /**
+     * A client set up as {@code application.properties} does, with its files under {@code dir}. Hybrid search is
+     * off so the hits are the vector hits, and every hit is returned whatever its score.
+     */
+    private static VectorStoreClient client(SoleMapper database, Path dir, String indexMode, String engine)
+            throws IOException, ReflectiveOperationException {
+        Properties properties = new Properties();
+        try (InputStream in = RecallSuiteTest.class.getResourceAsStream("/application.properties")) {
+            properties.load(in);
+        }
+        properties.setProperty("system.workspace", WORKSPACE);
+        properties.setProperty("vector.data.path", dir.resolve("data.hnsw").toString());
+        properties.setProperty("vector.bak.path", dir.resolve("data.bak").toString());
+        properties.setProperty("vector.link.path", dir.resolve("link.hnsw").toString());
+        properties.setProperty("vector.default.dimension", String.valueOf(DIMENSION));
+        properties.setProperty("vector.disk.pq.subspaces", String.valueOf(DIMENSION / DIMENSIONS_PER_SUBSPACE));
+        properties.setProperty("vector.search.top", String.valueOf(RECALL_AT[RECALL_AT.length - 1]));
+        properties.setProperty("vector.search.score", "-1");
+        properties.setProperty("vector.hybrid.enabled", "false");
+        properties.setProperty("vector.cache.size", "0");
+        properties.setProperty("vector.index.mode", indexMode);
+        properties.setProperty("vector.engine", engine);
+        VectorStoreClient client = new VectorStoreClient();
+        for (Field field : VectorStoreClient.class.getDeclaredFields()) {
+            Value value = field.getAnnotation(Value.class);
+            if (value == null) {
+                continue;
+            }
+            String property = properties.getProperty(value.value().substring(2, value.value().length() - 1));
+            Class<?> type = field.getType();
+            field.setAccessible(true);
+            if (type == int.class) {
+                field.setInt(client, Integer.parseInt(property));
+            } else if (type == long.class) {
+                field.setLong(client, Long.parseLong(property));
+            } else if (type == float.class) {
+                field.setFloat(client, Float.parseFloat(property));
+            } else if (type == double.class) {
+                field.setDouble(client, Double.parseDouble(property));
+            } else if (type == boolean.class) {
+                field.setBoolean(client, Boolean.parseBoolean(property));
+            } else {
+                field.set(client, property);
+            }
+        }
+        client.soleMapper = database;
+        client.init();
+        return client;
+    }
+
+    /**
+     * The rows of one workspace, text node ids and link ids are the positions of the vectors
+     */
+    private static SoleMapper database(float[][] text, float[][] links) {
+        IntFunction<LingVector> chunk = i -> LingVector.builder().nodeId(i).docId("doc").txt("").build();
+        IntFunction<LingVector> vector = i -> LingVector.builder().nodeId(i).vector(text[i]).build();
+        IntFunction<LingDocumentLink> link = i -> {
+            LingDocumentLink row = new LingDocumentLink();
+            row.setId(i);
+            row.setDescVector(links[i]);
+            return row;
+        };
+        return (SoleMapper) Proxy.newProxyInstance(SoleMapper.class.getClassLoader(), new Class<?>[]{SoleMapper.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "queryNextWorkspaceNodeId":
+                            return text.length;
+                        case "queryDocumentMetadata":
+                        case "queryLinkDocIds":
+                            return List.of();
+                        case "queryVectorStats":
+                            return stats(text.length, (int) args[1], (int) args[2]);
+                        case "queryLinkStats":
+                            return stats(links.length, (int) args[1], (int) args[2]);
+                        case "streamChunks":
+                            stream(text.length, chunk, args[1]);
+                            return null;
+                        case "streamVectors":
+                            stream(text.length, vector, args[1]);
+                            return null;
+                        case "streamLinkVectors":
+                            stream(links.length, link, args[1]);
+                            return null;
+                        case "queryLinkById":
+                            return link.apply((int) args[0]);
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static IndexManifest stats(int size, int shardCount, int shard) {
+        IndexManifest stats = new IndexManifest();
+        for (int id = shard; id < size; id += shardCount) {
+            stats.setCount(stats.getCount() + 1);
+            stats.setMaxId(id);
+        }
+        return stats;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void stream(int size, IntFunction<T> row, Object handler) {
+        T[] current = (T[]) new Object[1];
+        ResultContext<T> context = new ResultContext<>() {
+            @Override
+            public T getResultObject() {
+                return current[0];
+            }
+
+            @Override
+            public int getResultCount() {
+                return 0;
+            }
+
+            @Override
+            public boolean isStopped() {
+                return false;
+            }
+
+            @Override
+            public void stop() {
+            }
+        };
+        for (int i = 0; i < size; i++) {
+            current[0] = row.apply(i);
+            ((ResultHandler<T>) handler).handleResult(context);
+        }
+    }
+
+    /**
+     * The measured recalls falling below their baseline by more than the tolerance, and the baselines no longer
+     * measured. A mode may have a tolerance of its own, {@code tolerance.<mode>}.
+     */
+    private static List<String> regressions(TreeMap<String, Double> recalls, Properties baseline) {
+        String tolerance = baseline.getProperty("tolerance", String.valueOf(DEFAULT_TOLERANCE));
+        List<String> regressions = new ArrayList<>();
+        recalls.forEach((key, recall) -> {
+            String expected = baseline.getProperty(key);
+            double allowed = Double.parseDouble(
+                    baseline.getProperty("tolerance." + key.substring(0, key.indexOf('.')), tolerance));
+            if (expected != null && recall < Double.parseDouble(expected) - allowed) {
+                regressions.add(String.format(Locale.ROOT, "%s: %.3f, baseline %s", key, recall, expected));
+            }
+        });
+        for (String key : baseline.stringPropertyNames()) {
+            if (!key.startsWith("tolerance") && !recalls.containsKey(key)) {
+                regressions.add(key + ": not measured");
+            }
+        }
+        regressions.sort(Comparator.naturalOrder());
+        return regressions;
+    }
+}
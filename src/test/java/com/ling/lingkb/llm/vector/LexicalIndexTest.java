@@ -0,0 +1,72 @@
+package com.ling.lingkb.llm.vector;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.jbellis.jvector.graph.SearchResult;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Postings and BM25 ranking of {@link LexicalIndex}, with node id gaps that take one to four bytes to encode.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/19
+ */
+class LexicalIndexTest {
+    private static final int[] NODES = {0, 1, 200, 20_000, 2_200_000};
+
+    @Test
+    void postingsKeepEveryGap() {
+        LexicalIndex index = new LexicalIndex();
+        for (int i = 0; i < NODES.length; i++) {
+            index.add(NODES[i], List.of("all", "n" + i));
+        }
+        for (int i = 0; i < NODES.length; i++) {
+            assertTrue(index.containsAll(NODES[i], List.of("all", "n" + i)));
+            assertFalse(index.containsAll(NODES[i], List.of("all", "n" + (i + 1))));
+        }
+        assertFalse(index.containsAll(3, List.of("all")));
+        assertFalse(index.containsAll(NODES[NODES.length - 1] - 1, List.of("all")));
+        assertFalse(index.containsAll(0, List.of("missing")));
+        int[] found = Arrays.stream(index.search(List.of("all"), NODES.length)).mapToInt(score -> score.node)
+                .sorted().toArray();
+        assertArrayEquals(NODES, found);
+    }
+
+    @Test
+    void rarerAndMoreFrequentTermsRankFirst() {
+        LexicalIndex index = new LexicalIndex();
+        index.add(1, List.of("error", "code", "e42"));
+        index.add(2, List.of("error", "code", "e17"));
+        index.add(3, List.of("error", "error", "code"));
+        index.add(4, List.of("unrelated"));
+        SearchResult.NodeScore[] scores = index.search(List.of("error", "e42"), 10);
+        assertEquals(3, scores.length);
+        assertEquals(1, scores[0].node);
+        assertEquals(3, scores[1].node);
+        assertEquals(2, scores[2].node);
+        assertEquals(1, index.search(List.of("e42", "e42"), 10).length);
+    }
+
+    @Test
+    void removedAndRejectedNodesAreSkipped() {
+        LexicalIndex index = new LexicalIndex();
+        index.add(1, List.of("a"));
+        index.add(2, List.of("a"));
+        index.add(3, List.of("a"));
+        index.add(4, List.of());
+        index.remove(2);
+        index.remove(4);
+        SearchResult.NodeScore[] scores = index.search(List.of("a"), 10, node -> node != 3);
+        assertEquals(1, scores.length);
+        assertEquals(1, scores[0].node);
+        index.remove(1);
+        index.remove(3);
+        assertEquals(0, index.search(List.of("a"), 10).length);
+    }
+}
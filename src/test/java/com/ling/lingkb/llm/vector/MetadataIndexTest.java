@@ -0,0 +1,86 @@
+package com.ling.lingkb.llm.vector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.ling.lingkb.entity.SearchFilter;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Accept sets of {@link MetadataIndex} for every kind of condition and their combination.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/19
+ */
+class MetadataIndexTest {
+    private static final LocalDate DAY = LocalDate.of(2025, 8, 1);
+
+    private final MetadataIndex index = new MetadataIndex();
+
+    MetadataIndexTest() {
+        index.document("a", "Web", millis(DAY));
+        index.document("b", SearchFilter.SOURCE_UPLOAD, millis(DAY.plusDays(1)));
+        index.document("c", null, millis(DAY.plusDays(2)));
+        for (int id = 0; id < 3; id++) {
+            index.add("a", NodeType.TEXT, id);
+            index.add("b", NodeType.TEXT, 10 + id);
+            index.add("c", NodeType.TEXT, 20 + id);
+        }
+        index.add("a", NodeType.LINK, 1);
+        // nodes of unknown documents are ignored
+        index.add("d", NodeType.TEXT, 30);
+    }
+
+    @Test
+    void emptyFiltersAcceptEverything() {
+        assertNull(index.accept(null));
+        assertNull(index.accept(new SearchFilter()));
+        assertNull(index.accept(SearchFilter.builder().docIds(List.of()).sourceTypes(List.of()).build()));
+    }
+
+    @Test
+    void conditionsAreIntersected() {
+        assertEquals(Set.of(0, 1, 2, -2, 10, 11, 12), accept(SearchFilter.builder().docIds(List.of("a", "b", "d"))));
+        assertEquals(Set.of(0, 1, 2, -2), accept(SearchFilter.builder().sourceTypes(List.of("web"))));
+        assertEquals(Set.of(10, 11, 12),
+                accept(SearchFilter.builder().docIds(List.of("a", "b")).sourceTypes(List.of("UPLOAD"))));
+        assertEquals(Set.of(), accept(SearchFilter.builder().docIds(List.of("c")).sourceTypes(List.of("web"))));
+        assertEquals(Set.of(), accept(SearchFilter.builder().docIds(List.of("d"))));
+    }
+
+    @Test
+    void dateRangesAreInclusiveByDay() {
+        assertEquals(Set.of(10, 11, 12, 20, 21, 22),
+                accept(SearchFilter.builder().createdFrom(millis(DAY.plusDays(1)) + 3_600_000L)));
+        assertEquals(Set.of(0, 1, 2, -2, 10, 11, 12),
+                accept(SearchFilter.builder().createdTo(millis(DAY.plusDays(1)))));
+        assertEquals(Set.of(),
+                accept(SearchFilter.builder().createdFrom(millis(DAY.plusDays(2))).createdTo(millis(DAY))));
+    }
+
+    @Test
+    void cachedDayRangesFollowChanges() {
+        SearchFilter.SearchFilterBuilder range =
+                SearchFilter.builder().createdFrom(millis(DAY)).createdTo(millis(DAY.plusDays(1)));
+        assertEquals(Set.of(0, 1, 2, -2, 10, 11, 12), accept(range));
+        index.add("b", NodeType.TEXT, 13);
+        assertEquals(Set.of(0, 1, 2, -2, 10, 11, 12, 13), accept(range));
+        index.removeDocument("a");
+        assertEquals(Set.of(10, 11, 12, 13), accept(range));
+        assertTrue(accept(SearchFilter.builder().docIds(List.of("a"))).isEmpty());
+    }
+
+    private Set<Integer> accept(SearchFilter.SearchFilterBuilder filter) {
+        return NodeBitmapTest.keys(index.accept(filter.build()));
+    }
+
+    private static long millis(LocalDate day) {
+        return day.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,92 @@
+package com.ling.lingkb.llm.vector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Set semantics of {@link NodeBitmap} against a {@link TreeSet}, for the array and the bitmap containers alike.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/19
+ */
+class NodeBitmapTest {
+
+    @Test
+    void addRemoveAndGet() {
+        NodeBitmap bitmap = new NodeBitmap();
+        int[] keys = {0, 7, 65535, 65536, NodeType.LINK.key(3), NodeType.LINK.key(70000)};
+        Arrays.stream(keys).forEach(bitmap::add);
+        bitmap.add(7);
+        assertEquals(keys.length, bitmap.cardinality());
+        assertEquals(new TreeSet<>(Arrays.asList(0, 7, 65535, 65536, -4, -70001)), keys(bitmap));
+        bitmap.remove(65536);
+        bitmap.remove(65536);
+        assertFalse(bitmap.get(65536));
+        assertTrue(bitmap.get(NodeType.LINK.key(70000)));
+        Arrays.stream(keys).forEach(bitmap::remove);
+        assertTrue(bitmap.isEmpty());
+    }
+
+    @Test
+    void orAndMatchSetOperations() {
+        Random random = new Random(19);
+        TreeSet<Integer> dense = new TreeSet<>();
+        TreeSet<Integer> sparse = new TreeSet<>();
+        NodeBitmap denseBitmap = new NodeBitmap();
+        NodeBitmap sparseBitmap = new NodeBitmap();
+        // more than 4096 keys below 65536 turn the first container into a bitmap
+        for (int i = 0; i < 20_000; i++) {
+            int key = random.nextInt(80_000);
+            dense.add(key);
+            denseBitmap.add(key);
+        }
+        for (int i = 0; i < 500; i++) {
+            int key = random.nextInt(200_000);
+            sparse.add(key);
+            sparseBitmap.add(key);
+        }
+        TreeSet<Integer> union = new TreeSet<>(dense);
+        union.addAll(sparse);
+        assertEquals(union, keys(NodeBitmap.or(List.of(denseBitmap, sparseBitmap))));
+        TreeSet<Integer> intersection = new TreeSet<>(dense);
+        intersection.retainAll(sparse);
+        assertEquals(intersection, keys(denseBitmap.and(sparseBitmap)));
+        assertEquals(intersection, keys(sparseBitmap.and(denseBitmap)));
+        assertEquals(dense, keys(denseBitmap.and(denseBitmap)));
+        assertTrue(NodeBitmap.or(List.of()).isEmpty());
+        assertTrue(denseBitmap.and(new NodeBitmap()).isEmpty());
+    }
+
+    @Test
+    void bitmapContainersShrinkBackToArrays() {
+        NodeBitmap bitmap = new NodeBitmap();
+        BitSet expected = new BitSet();
+        for (int key = 0; key < 10_000; key += 2) {
+            bitmap.add(key);
+            expected.set(key);
+        }
+        long dense = bitmap.bytesUsed();
+        NodeBitmap few = new NodeBitmap();
+        few.add(4);
+        few.add(5);
+        NodeBitmap and = NodeBitmap.or(List.of(bitmap)).and(few);
+        assertEquals(new TreeSet<>(List.of(4)), keys(and));
+        assertTrue(and.bytesUsed() < dense);
+        assertEquals(expected.cardinality(), bitmap.cardinality());
+    }
+
+    static TreeSet<Integer> keys(NodeBitmap bitmap) {
+        TreeSet<Integer> keys = new TreeSet<>();
+        bitmap.forEach(keys::add);
+        return keys;
+    }
+}
@@ -0,0 +1,100 @@
+package com.ling.lingkb.llm.vector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Both directions of {@link OrdinalMapping} while it grows, after removals and in a shard of a sharded index.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/19
+ */
+class OrdinalMappingTest {
+
+    @Test
+    void growsPastItsInitialCapacity() {
+        OrdinalMapping mapping = new OrdinalMapping();
+        for (int ordinal = 0; ordinal < 1000; ordinal++) {
+            mapping.set(ordinal, ordinal % 2 == 0 ? NodeType.TEXT : NodeType.LINK, 5000 - ordinal);
+        }
+        assertEquals(1000, mapping.size());
+        for (int ordinal = 0; ordinal < 1000; ordinal++) {
+            NodeType type = ordinal % 2 == 0 ? NodeType.TEXT : NodeType.LINK;
+            assertEquals(5000 - ordinal, mapping.id(ordinal));
+            assertEquals(type, mapping.type(ordinal));
+            assertEquals(ordinal, mapping.ordinal(type, 5000 - ordinal));
+        }
+        // ids are unique per type only
+        assertEquals(OrdinalMapping.ABSENT, mapping.ordinal(NodeType.LINK, 5000));
+        assertEquals(OrdinalMapping.ABSENT, mapping.ordinal(NodeType.TEXT, 1_000_000));
+        assertEquals(OrdinalMapping.ABSENT, mapping.ordinal(NodeType.TEXT, -1));
+        assertEquals(5000, mapping.maxId(1000));
+    }
+
+    @Test
+    void skippedOrdinalsResolveToNoId() {
+        OrdinalMapping mapping = new OrdinalMapping();
+        mapping.set(40, NodeType.TEXT, 7);
+        assertEquals(41, mapping.size());
+        for (int ordinal = 0; ordinal < 40; ordinal++) {
+            assertEquals(OrdinalMapping.ABSENT, mapping.id(ordinal));
+        }
+        assertEquals(40, mapping.ordinal(NodeType.TEXT, 7));
+        assertEquals(OrdinalMapping.ABSENT, mapping.ordinal(NodeType.TEXT, 0));
+    }
+
+    @Test
+    void removedOrdinalsKeepTheirSlot() {
+        OrdinalMapping mapping = new OrdinalMapping();
+        for (int ordinal = 0; ordinal < 10; ordinal++) {
+            mapping.set(ordinal, NodeType.TEXT, ordinal * 3);
+        }
+        mapping.remove(4);
+        mapping.remove(4);
+        assertEquals(OrdinalMapping.ABSENT, mapping.id(4));
+        assertEquals(OrdinalMapping.ABSENT, mapping.ordinal(NodeType.TEXT, 12));
+        assertEquals(5, mapping.ordinal(NodeType.TEXT, 15));
+        assertEquals(10, mapping.size());
+        OrdinalMapping copy = mapping.copy(10);
+        assertEquals(OrdinalMapping.ABSENT, copy.id(4));
+        assertEquals(9, copy.ordinal(NodeType.TEXT, 27));
+    }
+
+    @Test
+    void shardsKeepSlotsForTheirOwnIdsOnly() {
+        OrdinalMapping mapping = new OrdinalMapping(4);
+        mapping.set(0, NodeType.TEXT, 1);
+        mapping.set(1, NodeType.TEXT, 4001);
+        assertEquals(1, mapping.ordinal(NodeType.TEXT, 4001));
+        // 2 shares the slot of 1 but belongs to another shard
+        assertEquals(OrdinalMapping.ABSENT, mapping.ordinal(NodeType.TEXT, 2));
+        assertEquals(0, mapping.ordinal(NodeType.TEXT, 1));
+    }
+
+    @Test
+    void writtenMappingsReadBack() throws IOException {
+        OrdinalMapping mapping = new OrdinalMapping();
+        mapping.set(0, NodeType.TEXT, 3);
+        mapping.set(1, NodeType.LINK, 3);
+        mapping.set(2, NodeType.TEXT, 8);
+        mapping.remove(2);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        mapping.write(out, 3);
+        mapping.writeTypes(out, 3);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        OrdinalMapping read = OrdinalMapping.read(in, 1);
+        read.readTypes(in);
+        assertEquals(0, read.ordinal(NodeType.TEXT, 3));
+        assertEquals(1, read.ordinal(NodeType.LINK, 3));
+        assertEquals(NodeType.LINK, read.type(1));
+        assertEquals(OrdinalMapping.ABSENT, read.id(2));
+    }
+}
@@ -0,0 +1,47 @@
+package com.ling.lingkb.llm.vector;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Merge decisions of {@link TieredMergePolicy} over segment sizes, with a flush size of 100 and a merge factor of 4
+ * the tiers end at 400, 1600 and 6400 live nodes.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/19
+ */
+class TieredMergePolicyTest {
+    private final TieredMergePolicy policy = new TieredMergePolicy(100, 4, 0.3);
+
+    @Test
+    void fewSegmentsOfATierAreKept() {
+        assertNull(policy.findMerge(new int[0], new int[0]));
+        assertNull(policy.findMerge(new int[]{100, 120, 399}, new int[3]));
+        // adjacent segments of different tiers are not merged
+        assertNull(policy.findMerge(new int[]{100, 100, 400, 100, 100}, new int[5]));
+    }
+
+    @Test
+    void fullTiersAreMerged() {
+        assertArrayEquals(new int[]{0, 4}, policy.findMerge(new int[]{100, 150, 200, 399}, new int[4]));
+        assertArrayEquals(new int[]{1, 5}, policy.findMerge(new int[]{1600, 400, 500, 1000, 1599, 100}, new int[6]));
+        // the last segments of a longer run are merged first
+        assertArrayEquals(new int[]{1, 5}, policy.findMerge(new int[]{100, 100, 100, 100, 100}, new int[5]));
+    }
+
+    @Test
+    void tiersCountLiveNodes() {
+        // 450 nodes with 100 tombstones are back in the first tier
+        assertArrayEquals(new int[]{0, 4},
+                policy.findMerge(new int[]{100, 100, 100, 450}, new int[]{0, 0, 0, 100}));
+    }
+
+    @Test
+    void segmentsWithManyTombstonesAreRewrittenAlone() {
+        assertArrayEquals(new int[]{1, 2}, policy.findMerge(new int[]{1000, 1000, 1000}, new int[]{299, 300, 999}));
+        assertNull(policy.findMerge(new int[]{1000, 1000}, new int[]{0, 299}));
+    }
+}
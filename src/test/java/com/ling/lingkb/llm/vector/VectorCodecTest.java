@@ -0,0 +1,87 @@
+package com.ling.lingkb.llm.vector;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Round trips of every element encoding, the normalized flag and the fallback to the legacy text column.
+ *
+ * @author shipotian
+ * @version 1.0.0
+ * @since 2025/8/19
+ */
+class VectorCodecTest {
+    private static final int DIMENSION = 1024;
+
+    @Test
+    void float32IsLossless() {
+        float[] vector = unit(1);
+        assertArrayEquals(vector, VectorCodec.decode(VectorCodec.encode(vector, VectorCodec.Encoding.FLOAT32)));
+    }
+
+    @Test
+    void float16KeepsElevenBitsOfPrecision() {
+        float[] vector = unit(2);
+        byte[] bytes = VectorCodec.encode(vector, VectorCodec.Encoding.FLOAT16);
+        assertEquals(8 + DIMENSION * 2, bytes.length);
+        float[] decoded = VectorCodec.decode(bytes);
+        for (int i = 0; i < DIMENSION; i++) {
+            assertEquals(vector[i], decoded[i], Math.abs(vector[i]) / 1024 + 1e-7f);
+        }
+    }
+
+    @Test
+    void int8KeepsHalfAStepOfTheLargestElement() {
+        float[] vector = unit(3);
+        byte[] bytes = VectorCodec.encode(vector, VectorCodec.Encoding.INT8);
+        assertEquals(8 + 4 + DIMENSION, bytes.length);
+        float max = 0;
+        for (float v : vector) {
+            max = Math.max(max, Math.abs(v));
+        }
+        float[] decoded = VectorCodec.decode(bytes);
+        for (int i = 0; i < DIMENSION; i++) {
+            assertEquals(vector[i], decoded[i], max / 127 / 2 + 1e-6f);
+        }
+    }
+
+    @Test
+    void legacyTextIsParsed() {
+        byte[] text = "0.6, 0.8,0".getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(new float[]{0.6f, 0.8f, 0}, VectorCodec.decode(text));
+    }
+
+    @Test
+    void onlyUnitAndZeroVectorsAreFlagged() {
+        for (VectorCodec.Encoding encoding : VectorCodec.Encoding.values()) {
+            assertTrue(VectorCodec.isNormalized(VectorCodec.encode(unit(4), encoding)));
+            assertTrue(VectorCodec.isNormalized(VectorCodec.encode(new float[DIMENSION], encoding)));
+            assertFalse(VectorCodec.isNormalized(VectorCodec.encode(new float[]{3, 4}, encoding)));
+        }
+        assertFalse(VectorCodec.isNormalized("0.6,0.8".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void unflaggedVectorsAreScaledWhenRead() {
+        assertArrayEquals(new float[]{0.6f, 0.8f},
+                VectorCodec.decode(VectorCodec.encode(new float[]{3, 4}, VectorCodec.Encoding.FLOAT32)), 1e-6f);
+        assertArrayEquals(new float[]{0.6f, 0.8f}, VectorCodec.decode("3,4".getBytes(StandardCharsets.UTF_8)), 1e-6f);
+        byte[] zero = VectorCodec.encode(new float[3], VectorCodec.Encoding.INT8);
+        assertArrayEquals(new float[3], VectorCodec.decode(zero));
+    }
+
+    private static float[] unit(long seed) {
+        Random random = new Random(seed);
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return VectorCodec.normalize(vector);
+    }
+}